@@ -0,0 +1,76 @@
+package zhgio.myss.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.Table;
+
+/**
+ * Parsing of the introspected metadata into the model, one operation covers every column of a synthetic schema.
+ * setTableDetailsAndExtras also measures getColumnsAsMap, which it builds once per table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class MetadataParsingBenchmark {
+
+	@Param({ "10", "1000", "50000" })
+	private int tableCount;
+
+	@Param({ "60" })
+	private int columnsPerTable;
+
+	private List<Table> tables;
+	private Map<Table, List<Map<String, Object>>> descriptions;
+
+	@Setup
+	public void setUp() {
+		tables = SyntheticSchema.create(tableCount, columnsPerTable);
+		descriptions = SyntheticSchema.describe(tables);
+	}
+
+	@Benchmark
+	public void updateColumnFromTypeString() {
+		for (Table table : tables) {
+			int c = 0;
+			for (Column column : table.getColumns()) {
+				column.updateColumnFromTypeString(SyntheticSchema.typeString(c++));
+			}
+		}
+	}
+
+	@Benchmark
+	public void appendColumnDetails(Blackhole blackhole) {
+		for (Table table : tables) {
+			for (Column column : table.getColumns()) {
+				blackhole.consume(column.appendColumnDetails());
+			}
+		}
+	}
+
+	@Benchmark
+	public void setTableDetailsAndExtras() {
+		for (Table table : tables) {
+			table.setTableDetailsAndExtras(descriptions.get(table));
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package zhgio.myss.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import zhgio.myss.elements.DdlWriter;
+import zhgio.myss.elements.Table;
+
+/**
+ * DDL generation for a whole synthetic schema, one operation writes the statements of every table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class SchemaDdlBenchmark {
+
+	@Param({ "10", "1000", "50000" })
+	private int tableCount;
+
+	@Param({ "60" })
+	private int columnsPerTable;
+
+	private List<Table> tables;
+
+	@Setup
+	public void setUp() {
+		tables = SyntheticSchema.create(tableCount, columnsPerTable);
+	}
+
+	@Benchmark
+	public void writeCreateStatement(Blackhole blackhole) {
+		for (Table table : tables) {
+			table.writeCreateStatement();
+			blackhole.consume(table.getSqlStatement());
+		}
+	}
+
+	/**
+	 * Same statements streamed by a {@link DdlWriter} into a sink, nothing retained on the tables.
+	 */
+	@Benchmark
+	public void streamCreateStatement(Blackhole blackhole) throws IOException {
+		DdlWriter ddlWriter = DdlWriter.local();
+		BlackholeWriter sink = new BlackholeWriter(blackhole);
+		for (Table table : tables) {
+			ddlWriter.writeCreateStatement(table, Collections.emptySet(), sink);
+		}
+	}
+
+	@Benchmark
+	public void writeAlterTableAddFkConstraintsStatement(Blackhole blackhole) {
+		for (Table table : tables) {
+			if (!table.getForeignKeys().isEmpty()) {
+				table.writeAlterTableAddFkConstraintsStatement();
+				blackhole.consume(table.getSqlStatement());
+			}
+		}
+	}
+
+	private static final class BlackholeWriter extends Writer {
+
+		private final Blackhole blackhole;
+
+		BlackholeWriter(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void write(char[] buffer, int offset, int length) {
+			blackhole.consume(buffer);
+			blackhole.consume(length);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+}
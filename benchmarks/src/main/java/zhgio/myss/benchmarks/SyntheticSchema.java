@@ -0,0 +1,108 @@
+package zhgio.myss.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import zhgio.myss.commons.DataType;
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.Index;
+import zhgio.myss.elements.Key;
+import zhgio.myss.elements.Table;
+
+/**
+ * Builds schemas shaped like a real introspection result: every table has a bigint auto increment primary key,
+ * a mix of column types, a few secondary indices and foreign keys to earlier tables.
+ * Generation is deterministic so every fork measures the same model.
+ */
+final class SyntheticSchema {
+
+	// DESC `table` type strings with the data type the driver reports for them
+	private static final String[] TYPE_STRINGS = { "int(11)", "varchar(255)", "decimal(12,6)", "datetime", "bigint(20) unsigned", "tinyint(1)", "enum('new','paid','sent')",
+			"char(2)", "double", "smallint(5) unsigned", "date", "blob" };
+	private static final DataType[] TYPES = { DataType.INT, DataType.VARCHAR, DataType.DECIMAL, DataType.TIMESTAMP, DataType.BIGINT, DataType.BIT, DataType.CHAR,
+			DataType.CHAR, DataType.DOUBLE, DataType.SMALLINT, DataType.DATE, DataType.BLOB };
+	private static final int INDICES_PER_TABLE = 3;
+	private static final int FOREIGN_KEYS_PER_TABLE = 2;
+
+	private SyntheticSchema() {
+	}
+
+	static List<Table> create(int tableCount, int columnsPerTable) {
+		List<Table> tables = new ArrayList<>(tableCount);
+		for (int t = 0; t < tableCount; t++) {
+			tables.add(createTable(t, columnsPerTable));
+		}
+		return tables;
+	}
+
+	/**
+	 * @return the rows DESC `table` returns for every table, keyed like the ones JdbcTemplate#queryForList hands to the model
+	 */
+	static Map<Table, List<Map<String, Object>>> describe(List<Table> tables) {
+		Map<Table, List<Map<String, Object>>> descriptions = new HashMap<>();
+		for (Table table : tables) {
+			List<Map<String, Object>> rows = new ArrayList<>();
+			int c = 0;
+			for (Column column : table.getColumns()) {
+				Map<String, Object> row = new HashMap<>();
+				row.put("Field", column.getColumnName());
+				row.put("Type", typeString(c++));
+				row.put("Extra", column.isAutoincrement() ? "auto_increment" : c % 7 == 0 ? "on update CURRENT_TIMESTAMP" : "");
+				rows.add(row);
+			}
+			descriptions.put(table, rows);
+		}
+		return descriptions;
+	}
+
+	static String typeString(int columnPosition) {
+		return columnPosition == 0 ? "bigint(20) unsigned" : TYPE_STRINGS[columnPosition % TYPE_STRINGS.length];
+	}
+
+	private static Table createTable(int t, int columnsPerTable) {
+		Table table = new Table("synthetic", "table_" + t);
+		Set<Column> columns = new LinkedHashSet<>();
+		for (int c = 0; c < columnsPerTable; c++) {
+			columns.add(createColumn(table, c));
+		}
+		table.setColumns(columns);
+		table.setPrimaryKeys(new HashSet<>(Arrays.asList(new Key(true, table.getTableName(), "id"))));
+
+		Set<Index> indices = new LinkedHashSet<>();
+		for (int i = 1; i <= INDICES_PER_TABLE && i + 1 < columnsPerTable; i++) {
+			indices.add(new Index(table.getTableName(), "idx_" + t + "_" + i, new LinkedHashSet<>(Arrays.asList("col_" + i, "col_" + (i + 1))), true, false));
+		}
+		table.setIndices(indices);
+
+		Set<Key> foreignKeys = new HashSet<>();
+		for (int f = 1; f <= FOREIGN_KEYS_PER_TABLE && t - f >= 0 && f < columnsPerTable; f++) {
+			int parent = (t - f) / 2;
+			foreignKeys.add(new Key(false, "table_" + parent, "id", "fk_" + t + "_" + f, "col_" + f));
+		}
+		table.setForeignKeys(foreignKeys);
+		table.setNumberOfRowsApprox(t * 1000L);
+		table.setTableSizeInMb(BigDecimal.valueOf(t % 100));
+		return table;
+	}
+
+	private static Column createColumn(Table table, int c) {
+		Column column = new Column(table);
+		boolean key = c == 0;
+		column.setColumnName(key ? "id" : "col_" + c);
+		column.setType(key ? DataType.BIGINT : TYPES[c % TYPES.length]);
+		column.setAutoincrement(key);
+		column.setNullable(!key && c % 3 != 0);
+		column.setDefaultable(!key && c % 5 == 0);
+		column.setDefaultValue(column.isDefaultable() ? "'0'" : "NULL");
+		column.updateColumnFromTypeString(typeString(c));
+		return column;
+	}
+
+}
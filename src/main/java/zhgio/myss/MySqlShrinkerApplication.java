@@ -1,10 +1,15 @@
 package zhgio.myss;
 
+import java.util.zip.Deflater;
+
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ConfigurableApplicationContext;
 
 import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.DumpFormat;
+import zhgio.myss.commons.RunMode;
+import zhgio.myss.commons.WriteMode;
 
 @SpringBootApplication
 @Slf4j
@@ -14,6 +19,8 @@ public class MySqlShrinkerApplication {
 	public static final String DESTINATION_SCHEMA_NAME = "ina_trimmed";
 	public static final String DESTINATION_USERNAME = "root";
 	public static final String DESTINATION_PASSWORD = "root";
+	// fan-out: more destination servers, comma separated, each getting the same schema and rows out of a single origin read
+	public static final String DESTINATION_FAN_OUT_URLS = "";
 
 	public static final String ORIGIN_SCHEMA_URL = "jdbc:mysql://localhost:3355/";
 	public static final String ORIGIN_SCHEMA_NAME = "?";
@@ -24,6 +31,70 @@ public class MySqlShrinkerApplication {
 	public static final String DEFAULT_CHARSET = "latin1";
 	public static final String DB_DRIVER = "com.mysql.jdbc.Driver";
 
+	public static final RunMode RUN_MODE = RunMode.CLONE;
+
+	// multi-schema runs: origin schemas of identical structure, names or LIKE patterns separated by commas, e.g. "tenant_%";
+	// the destination schema name then has to contain {schema}, e.g. "{schema}_trimmed"
+	public static final String ORIGIN_SCHEMA_NAMES = "";
+	public static final int SCHEMA_WORKERS = 4; // schemas cloned concurrently, lowered when the connection budgets cannot serve that many
+	public static final int ORIGIN_CONNECTION_BUDGET = 32; // origin connections open at once over all schemas
+	public static final int DESTINATION_CONNECTION_BUDGET = 32;
+
+	// clone runs journal their progress here, an interrupted run is resumed from it and a finished run removes it
+	public static final String PROGRESS_JOURNAL = "myss-progress.journal";
+	public static final int JOURNAL_SYNC_INTERVAL = 64; // journal entries written between two fsyncs
+
+	// loads the whole schema model through a few information_schema queries instead of per-table metadata calls
+	public static final boolean BULK_INTROSPECTION = true;
+	// keeps the schema model in a local snapshot, tables whose definition fingerprint did not change are not introspected again
+	public static final boolean SCHEMA_CACHE = true;
+	public static final String SCHEMA_CACHE_DIRECTORY = ".";
+	// number of destination connections running DDL concurrently, 1 keeps the sequential create then alter flow
+	public static final int DDL_WORKERS = 8;
+	// with bulk introspection off, introspects tables one by one while the DDL of the previous ones runs on the DDL workers
+	public static final boolean DDL_PIPELINE = false;
+	public static final int INTROSPECTION_WORKERS = 4; // origin connections introspecting concurrently in the pipeline
+	public static final int DDL_PIPELINE_QUEUE_CAPACITY = 32; // tables buffered between two pipeline stages
+
+	// row copy, off by default so only the structure is cloned
+	public static final boolean COPY_DATA = false;
+	public static final int COPY_BATCH_SIZE = 1000;
+	public static final int COPY_QUEUE_CAPACITY = 16; // batches buffered between the origin reader and the destination writer
+	public static final int COPY_WORKERS = 4; // concurrent chunks or single stream tables, each uses an origin and a destination connection
+	public static final long COPY_CHUNK_ROWS = 1_000_000; // tables with an integer primary key are split in key ranges of about this many rows
+	public static final long PLAN_ROW_COST_BYTES = 100; // fixed cost of copying a row on top of its bytes, used to plan the copy
+	// counts rows exactly before planning, large tables in concurrent key ranges, and checks the copied rows against the counts
+	public static final boolean EXACT_COUNTS = false;
+	public static final int COUNT_WORKERS = 4; // origin connections counting concurrently
+	public static final long COUNT_RANGE_ROWS = 5_000_000; // tables with an integer primary key are counted in key ranges of about this many rows
+	public static final long COUNT_CACHE_MAX_AGE_MINUTES = 24 * 60; // counts younger than this are reused from myss-counts-<schema>.properties
+	public static final WriteMode COPY_WRITE_MODE = WriteMode.INSERT;
+	public static final int LOAD_DATA_FLUSH_BYTES = 8 * 1024 * 1024; // size of the in-memory infile handed to each LOAD DATA
+	// copied tables are created without their secondary indices, filled with unique checks off and indexed afterwards
+	public static final boolean DEFER_INDICES = false;
+	public static final int INDEX_WORKERS = 4; // tables getting their indices built concurrently
+
+	// subset extraction: copies the seed rows picked in the rules file plus every row they reference
+	public static final boolean SHRINK_DATA = false;
+	public static final String RULES_FILE = "myss-rules.properties";
+	public static final int SUBSET_LOOKUP_BATCH_SIZE = 5000; // keys per WHERE pk IN (...) parent lookup
+
+	// incremental refresh: copies only rows past the per-table high-water marks kept in the marks file
+	public static final String HIGH_WATER_MARKS_FILE = "myss-watermarks.properties";
+	public static final String REFRESH_UPDATED_COLUMN = "updated_at"; // tracked in every table having it, before the auto increment key
+
+	// dump directory written by the DUMP run mode and read by the RESTORE run mode
+	public static final String DUMP_DIRECTORY = "myss-dump";
+	public static final int DUMP_CHUNK_BYTES = 8 * 1024 * 1024; // uncompressed size of every data file
+	public static final int DUMP_COMPRESSION_THREADS = Runtime.getRuntime().availableProcessors();
+	public static final int DUMP_COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+	public static final DumpFormat DUMP_FORMAT = DumpFormat.TSV; // COLUMNAR for typed row groups restored through memory maps
+	public static final int DUMP_ROW_GROUP_ROWS = 64 * 1024; // rows of every columnar data file, fewer when they pass DUMP_CHUNK_BYTES
+	public static final int RESTORE_WORKERS = 4; // tables loaded concurrently on restore
+
+	// per phase timings, latency percentiles and throughput of the last run, also served live on /myss/metrics
+	public static final String METRICS_REPORT_FILE = "myss-metrics.json";
+
 	public static void main(String[] args) {
 		ConfigurableApplicationContext run = SpringApplication.run(MySqlShrinkerApplication.class, args);
 		run.close();
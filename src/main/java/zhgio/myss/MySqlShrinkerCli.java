@@ -0,0 +1,42 @@
+package zhgio.myss;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import zhgio.myss.commons.Settings;
+import zhgio.myss.runners.MySSRunner;
+
+/**
+ * Headless entry point running a single {@link MySSRunner} without a Spring context or servlet container.
+ * Settings come from myss.properties and --key=value arguments, see {@link Settings}.
+ * Built as a thin jar with its dependencies in lib/ by the cli profile, which is what class-data sharing archives need.
+ */
+public class MySqlShrinkerCli {
+
+	private MySqlShrinkerCli() {
+	}
+
+	/**
+	 * Exits with status 1 when the run failed, so scheduled jobs can tell.
+	 */
+	public static void main(String[] args) {
+		if (System.getProperty("logback.configurationFile") == null) {
+			System.setProperty("logback.configurationFile", "logback-cli.xml"); // has to be set before the first logger exists
+		}
+		Logger log = LoggerFactory.getLogger(MySqlShrinkerCli.class);
+		MySSRunner runner = new MySSRunner(Settings.load(args));
+		log.info("Started in {} ms", ManagementFactory.getRuntimeMXBean().getUptime());
+		try {
+			runner.run(args);
+		} catch (SQLException | IOException e) {
+			log.error("Failed in {} ms", ManagementFactory.getRuntimeMXBean().getUptime());
+			System.exit(1);
+		}
+		log.info("Finished in {} ms", ManagementFactory.getRuntimeMXBean().getUptime());
+	}
+
+}
@@ -0,0 +1,304 @@
+package zhgio.myss.commons;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import zhgio.myss.elements.Column;
+
+import static zhgio.myss.commons.Keyword.EMPTY_STR;
+
+/**
+ * One masking operator bound to one column, turning a non null origin value into the value written to the destination.
+ * Operators keep their digest and buffers between rows, so an instance belongs to a single reader thread.
+ * Specs understood by {@link #compile(String, Column, String)}:
+ * <ul>
+ * <li>hash - salted SHA-256, hex for text columns and a number within the column's range for numeric ones</li>
+ * <li>fake - same shape as the original: digits stay digits, letters stay letters of the same case, integers keep their
+ * number of digits and dates move by up to half a year</li>
+ * <li>replace:value - the same fixed value for every row</li>
+ * <li>null - null for every row, nullable columns only</li>
+ * <li>keep - the origin value, exempts a column from broader rules</li>
+ * </ul>
+ * hash and fake are deterministic for a given salt, so equal values stay equal across tables and runs.
+ */
+public abstract class ColumnMask {
+
+	public static final String KEEP = "keep";
+	private static final Set<String> OPERATORS = new HashSet<>(Arrays.asList(KEEP, "null", "replace", "hash", "fake"));
+
+	private static final Set<DataType> TEXT_TYPES = EnumSet.of(DataType.CHAR, DataType.VARCHAR, DataType.BLOB);
+	private static final Set<DataType> INTEGER_TYPES = EnumSet.of(DataType.TINYINT, DataType.SMALLINT, DataType.INT, DataType.BIGINT);
+	private static final Set<DataType> NUMERIC_TYPES = EnumSet.of(DataType.TINYINT, DataType.SMALLINT, DataType.INT, DataType.BIGINT, DataType.FLOAT, DataType.DOUBLE,
+			DataType.DECIMAL);
+	private static final Set<DataType> TEMPORAL_TYPES = EnumSet.of(DataType.DATE, DataType.TIME, DataType.TIMESTAMP, DataType.DATETIME);
+	private static final long[] POWERS_OF_TEN = new long[19];
+	private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+	private static final int MAX_DAYS_SHIFT = 182;
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	public abstract Object apply(Object value);
+
+	/**
+	 * @return the operator for the spec, null for keep
+	 * @throws IllegalStateException if the spec is unknown or does not fit the column
+	 */
+	public static ColumnMask compile(String spec, Column column, String salt) {
+		validate(spec);
+		DataType type = column.getType();
+		switch (operatorOf(spec)) {
+		case "null":
+			check(column.isNullable(), spec, column);
+			return new Constant(null);
+		case "replace":
+			return new Constant(spec.substring(spec.indexOf(':') + 1));
+		case "hash":
+			check(TEXT_TYPES.contains(type) || NUMERIC_TYPES.contains(type), spec, column);
+			return new Hash(column, salt);
+		case "fake":
+			check(type != DataType.ENUM, spec, column);
+			return new Fake(column, salt);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException if the spec names no known operator
+	 */
+	public static void validate(String spec) {
+		if (!OPERATORS.contains(operatorOf(spec))) {
+			throw new IllegalStateException("Unknown masking rule " + spec);
+		}
+	}
+
+	private static String operatorOf(String spec) {
+		return spec.contains(":") ? spec.substring(0, spec.indexOf(':')) : spec;
+	}
+
+	private static void check(boolean fits, String spec, Column column) {
+		if (!fits) {
+			throw new IllegalStateException("Masking rule " + spec + " does not fit column " + column.getTable().getTableName() + "." + column.getColumnName() + " of type "
+					+ column.getType() + (column.isNullable() ? EMPTY_STR : " NOT NULL"));
+		}
+	}
+
+	/**
+	 * Largest value a masked number may take without overflowing the column.
+	 */
+	private static long numericBound(Column column) {
+		switch (column.getType()) {
+		case TINYINT:
+			return column.isUnsigned() ? 255 : Byte.MAX_VALUE;
+		case SMALLINT:
+			return column.isUnsigned() ? 65535 : Short.MAX_VALUE;
+		case INT:
+			return column.isUnsigned() ? 4294967295L : Integer.MAX_VALUE;
+		case BIGINT:
+			return Long.MAX_VALUE;
+		default: // decimals and floating point, kept within the integer digits of the column
+			int integerDigits = column.getColumnSize() - column.getDecimalDigits();
+			return POWERS_OF_TEN[integerDigits > 0 ? Math.min(integerDigits, 18) : 9] - 1;
+		}
+	}
+
+	private static final class Constant extends ColumnMask {
+
+		private final Object value;
+
+		private Constant(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object apply(Object value) {
+			return this.value;
+		}
+	}
+
+	private static final class Hash extends ColumnMask {
+
+		private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+		private final MessageDigest digest;
+		private final byte[] salt;
+		private final byte[] hash;
+		private final char[] hex;
+		private final int length;
+		private final long bound; // 0 for text columns
+
+		private Hash(Column column, String salt) {
+			try {
+				this.digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			this.salt = salt.getBytes(StandardCharsets.UTF_8);
+			this.hash = new byte[digest.getDigestLength()];
+			this.hex = new char[hash.length * 2];
+			this.length = column.getColumnSize() > 0 ? Math.min(column.getColumnSize(), hex.length) : hex.length;
+			this.bound = NUMERIC_TYPES.contains(column.getType()) ? numericBound(column) : 0;
+		}
+
+		@Override
+		public Object apply(Object value) {
+			digest.update(salt);
+			digest.update(value instanceof byte[] ? (byte[]) value : value.toString().getBytes(StandardCharsets.UTF_8));
+			try {
+				digest.digest(hash, 0, hash.length);
+			} catch (DigestException e) {
+				throw new IllegalStateException(e);
+			}
+			if (bound > 0) {
+				long number = 0;
+				for (int i = 0; i < 8; i++) {
+					number = number << 8 | hash[i] & 0xff;
+				}
+				return bound == Long.MAX_VALUE ? number & Long.MAX_VALUE : Math.floorMod(number, bound + 1);
+			}
+			for (int i = 0; i < length; i++) {
+				int b = hash[i / 2] & 0xff;
+				hex[i] = HEX[i % 2 == 0 ? b >>> 4 : b & 0x0f];
+			}
+			return new String(hex, 0, length);
+		}
+	}
+
+	private static final class Fake extends ColumnMask {
+
+		private static final long FNV_PRIME = 0x100000001b3L;
+
+		private final long saltSeed;
+		private final boolean bool;
+		private final boolean temporal;
+		private final long integerBound; // 0 for non integer columns
+		private char[] chars = new char[64];
+
+		private Fake(Column column, String salt) {
+			long seed = 0xcbf29ce484222325L;
+			for (int i = 0; i < salt.length(); i++) {
+				seed = (seed ^ salt.charAt(i)) * FNV_PRIME;
+			}
+			this.saltSeed = seed;
+			this.bool = column.isBitOrBoolean();
+			this.temporal = TEMPORAL_TYPES.contains(column.getType());
+			this.integerBound = INTEGER_TYPES.contains(column.getType()) ? numericBound(column) : 0;
+		}
+
+		@Override
+		public Object apply(Object value) {
+			long seed = seed(value);
+			if (bool) {
+				return (seed & 1) == 1;
+			} else if (temporal) {
+				return shift(value, (int) Math.floorMod(seed, 2 * MAX_DAYS_SHIFT + 1) - MAX_DAYS_SHIFT);
+			} else if (integerBound > 0 && value instanceof Number) {
+				return fakeInteger(((Number) value).longValue(), seed);
+			}
+			return fakeText(value, seed);
+		}
+
+		/**
+		 * Another integer with the same number of digits and sign, within the column's range.
+		 */
+		private long fakeInteger(long value, long seed) {
+			long magnitude = value == Long.MIN_VALUE ? Long.MAX_VALUE : Math.abs(value);
+			int digits = 1;
+			while (digits < POWERS_OF_TEN.length && magnitude >= POWERS_OF_TEN[digits]) {
+				digits++;
+			}
+			long lower = digits == 1 ? 0 : POWERS_OF_TEN[digits - 1];
+			long upper = Math.min(digits == POWERS_OF_TEN.length ? Long.MAX_VALUE : POWERS_OF_TEN[digits] - 1, integerBound);
+			long faked = lower > upper ? Math.floorMod(seed, upper + 1) : lower + Math.floorMod(seed, upper - lower + 1);
+			return value < 0 ? -faked : faked;
+		}
+
+		private String fakeText(Object value, long seed) {
+			String text = value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8)
+					: value instanceof Double || value instanceof Float ? BigDecimal.valueOf(((Number) value).doubleValue()).toPlainString() : value.toString();
+			int length = text.length();
+			if (chars.length < length) {
+				chars = new char[Math.max(length, chars.length * 2)];
+			}
+			text.getChars(0, length, chars, 0);
+			for (int i = 0; i < length; i++) {
+				char c = chars[i];
+				seed = next(seed);
+				int random = (int) (seed >>> 33);
+				if (c >= '1' && c <= '9' && (i == 0 || chars[i - 1] < '0' || chars[i - 1] > '9')) {
+					chars[i] = (char) ('1' + random % 9); // a leading digit never becomes a zero
+				} else if (c >= '0' && c <= '9') {
+					chars[i] = (char) ('0' + random % 10);
+				} else if (c >= 'a' && c <= 'z') {
+					chars[i] = (char) ('a' + random % 26);
+				} else if (c >= 'A' && c <= 'Z') {
+					chars[i] = (char) ('A' + random % 26);
+				}
+			}
+			return new String(chars, 0, length);
+		}
+
+		private Object shift(Object value, int days) {
+			if (value instanceof Timestamp) {
+				Timestamp shifted = new Timestamp(((Timestamp) value).getTime() + days * DAY_MILLIS);
+				shifted.setNanos(((Timestamp) value).getNanos());
+				return shifted;
+			} else if (value instanceof Date) {
+				return new Date(((Date) value).getTime() + days * DAY_MILLIS);
+			} else if (value instanceof Time) {
+				return new Time(((Time) value).getTime() + days * 60 * 1000L); // minutes instead of days, a time has no date
+			} else if (value instanceof LocalDateTime) {
+				return ((LocalDateTime) value).plusDays(days);
+			} else if (value instanceof LocalDate) {
+				return ((LocalDate) value).plusDays(days);
+			}
+			return value;
+		}
+
+		/**
+		 * FNV-1a over the value on top of the salt, text values are read in place.
+		 */
+		private long seed(Object value) {
+			long seed = saltSeed;
+			if (value instanceof byte[]) {
+				for (byte b : (byte[]) value) {
+					seed = (seed ^ (b & 0xff)) * FNV_PRIME;
+				}
+			} else {
+				CharSequence text = value instanceof CharSequence ? (CharSequence) value : value.toString();
+				for (int i = 0; i < text.length(); i++) {
+					seed = (seed ^ text.charAt(i)) * FNV_PRIME;
+				}
+			}
+			return next(seed);
+		}
+
+		/**
+		 * One xorshift step, spreads the seed over the characters of a value.
+		 */
+		private static long next(long seed) {
+			seed ^= seed << 13;
+			seed ^= seed >>> 7;
+			seed ^= seed << 17;
+			return seed;
+		}
+	}
+
+}
@@ -0,0 +1,372 @@
+package zhgio.myss.commons;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.Table;
+
+/**
+ * One row group of the columnar dump format: a slice of a table's rows stored column by column, every column as a
+ * vector specialized for its values. Little endian layout:
+ * <pre>
+ * int magic, int version, int rows, int columns
+ * per column: int section bytes, byte vector kind, byte has nulls, [null bitmap], vector
+ * </pre>
+ * Vectors are int[rows] for TINYINT to INT, long[rows] for BIGINT, unsigned INT and BIT(n), float[rows] for FLOAT,
+ * double[rows] for DOUBLE, a bitmap for booleans, a dictionary of length prefixed UTF-8 entries plus 1, 2 or 4 byte
+ * codes for ENUM (seeded from {@link Column#getEnums()}) and length prefixed bytes for everything else, in the text
+ * LOAD DATA takes.
+ * Null rows hold 0 in fixed width vectors and nothing in byte vectors. Bit i of a bitmap is bit i % 8 of byte i / 8.
+ * A value its column's vector cannot hold, like an unsigned BIGINT past Long.MAX_VALUE, stores the column of that row
+ * group as bytes.
+ */
+public final class ColumnarRowGroup {
+
+	private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+	private static final int MAGIC = 0x4353_594D; // "MYSC" in little endian
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+	private static final byte INTS = 1;
+	private static final byte LONGS = 2;
+	private static final byte DOUBLES = 3;
+	private static final byte BITS = 4;
+	private static final byte DICTIONARY = 5;
+	private static final byte BYTES = 6;
+	private static final byte FLOATS = 7;
+
+	private final DataType[] types;
+	private final List<List<String>> enumValues; // dictionary seed of every ENUM column, empty for the others
+
+	public ColumnarRowGroup(Table table) {
+		this.types = table.getColumns().stream().map(Column::getType).toArray(DataType[]::new);
+		this.enumValues = new ArrayList<>();
+		for (Column column : table.getColumns()) {
+			enumValues.add(column.getType() == DataType.ENUM && column.getEnums() != null ? unquote(column.getEnums()) : Collections.emptyList());
+		}
+	}
+
+	/**
+	 * @return the encoded row group, ready to be written out
+	 */
+	public ByteBuffer encode(List<Object[]> rows) {
+		Output out = new Output(HEADER_BYTES + rows.size() * types.length * 8);
+		out.ensure(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putInt(rows.size()).putInt(types.length);
+		for (int column = 0; column < types.length; column++) {
+			int sectionStart = out.ensure(4).position();
+			out.buffer.putInt(0); // section bytes, set once the vector is written
+			byte kind = kindOf(column, rows);
+			out.ensure(1).put(kind);
+			writeNulls(column, rows, out);
+			writeVector(column, kind, rows, out);
+			out.buffer.putInt(sectionStart, out.buffer.position() - sectionStart - 4);
+		}
+		out.buffer.flip();
+		return out.buffer;
+	}
+
+	/**
+	 * Writes the rows of an encoded row group in the LOAD DATA text format of {@link LoadDataEncoder}, reading the
+	 * vectors in place, e.g. out of a memory mapped file. Numbers go from the vectors to digits without boxing.
+	 * @return the number of rows
+	 */
+	public static int toLoadData(ByteBuffer group, RowBuffer out) {
+		ByteBuffer in = group.duplicate().order(ORDER);
+		if (in.getInt() != MAGIC) {
+			throw new IllegalStateException("Not a columnar row group");
+		}
+		int version = in.getInt();
+		if (version != VERSION) {
+			throw new IllegalStateException("Columnar row group version " + version + " is not supported, expected " + VERSION);
+		}
+		int rows = in.getInt();
+		ColumnReader[] readers = new ColumnReader[in.getInt()];
+		for (int column = 0; column < readers.length; column++) {
+			int sectionBytes = in.getInt();
+			readers[column] = new ColumnReader(in, rows);
+			in.position(in.position() + sectionBytes);
+		}
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < readers.length; column++) {
+				if (column > 0) {
+					out.write(LoadDataEncoder.FIELD_SEPARATOR);
+				}
+				readers[column].writeValue(row, out);
+			}
+			out.write(LoadDataEncoder.LINE_SEPARATOR);
+		}
+		return rows;
+	}
+
+	/**
+	 * @return the vector kind holding every value of the column, an all null column is stored as bytes
+	 */
+	private byte kindOf(int column, List<Object[]> rows) {
+		byte kind = 0;
+		for (Object[] row : rows) {
+			if (row[column] == null) {
+				continue;
+			}
+			byte valueKind = kindOf(row[column], types[column]);
+			if (kind == 0) {
+				kind = valueKind;
+			} else if (kind != valueKind) {
+				if ((kind != INTS || valueKind != LONGS) && (kind != LONGS || valueKind != INTS)) {
+					return BYTES;
+				}
+				kind = LONGS; // ints and longs mixed, e.g. unsigned INT
+			}
+		}
+		return kind == 0 ? BYTES : kind;
+	}
+
+	private static byte kindOf(Object value, DataType type) {
+		if (value instanceof Boolean) { // BIT(1) and tinyint(1)
+			return BITS;
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return INTS;
+		} else if (value instanceof Long) {
+			return LONGS;
+		} else if (value instanceof byte[] && (type == DataType.BIT || type == DataType.BOOLEAN) && ((byte[]) value).length <= 8) {
+			return LONGS;
+		} else if (value instanceof Float) {
+			return FLOATS;
+		} else if (value instanceof Double) {
+			return DOUBLES;
+		} else if (value instanceof String && type == DataType.ENUM) {
+			return DICTIONARY;
+		}
+		return BYTES;
+	}
+
+	private static void writeNulls(int column, List<Object[]> rows, Output out) {
+		boolean hasNulls = rows.stream().anyMatch(row -> row[column] == null);
+		out.ensure(1).put((byte) (hasNulls ? 1 : 0));
+		if (hasNulls) {
+			writeBitmap(rows.size(), row -> rows.get(row)[column] == null, out);
+		}
+	}
+
+	private void writeVector(int column, byte kind, List<Object[]> rows, Output out) {
+		switch (kind) {
+		case INTS:
+			ByteBuffer ints = out.ensure(rows.size() * 4);
+			rows.forEach(row -> ints.putInt(row[column] == null ? 0 : ((Number) row[column]).intValue()));
+			break;
+		case LONGS:
+			ByteBuffer longs = out.ensure(rows.size() * 8);
+			rows.forEach(row -> longs.putLong(row[column] == null ? 0 : row[column] instanceof byte[] ? LoadDataEncoder.bitsToLong((byte[]) row[column])
+					: ((Number) row[column]).longValue()));
+			break;
+		case FLOATS:
+			ByteBuffer floats = out.ensure(rows.size() * 4);
+			rows.forEach(row -> floats.putFloat(row[column] == null ? 0 : (Float) row[column]));
+			break;
+		case DOUBLES:
+			ByteBuffer doubles = out.ensure(rows.size() * 8);
+			rows.forEach(row -> doubles.putDouble(row[column] == null ? 0 : (Double) row[column]));
+			break;
+		case BITS:
+			writeBitmap(rows.size(), row -> Boolean.TRUE.equals(rows.get(row)[column]), out);
+			break;
+		case DICTIONARY:
+			writeDictionary(column, rows, out);
+			break;
+		default:
+			for (Object[] row : rows) {
+				if (row[column] != null) {
+					byte[] bytes = bytesOf(row[column], types[column]);
+					out.ensure(4 + bytes.length).putInt(bytes.length).put(bytes);
+				}
+			}
+		}
+	}
+
+	private void writeDictionary(int column, List<Object[]> rows, Output out) {
+		List<String> entries = new ArrayList<>(enumValues.get(column));
+		Map<String, Integer> codes = new HashMap<>();
+		for (int i = 0; i < entries.size(); i++) {
+			codes.put(entries.get(i), i);
+		}
+		int[] rowCodes = new int[rows.size()];
+		for (int i = 0; i < rowCodes.length; i++) {
+			String value = (String) rows.get(i)[column];
+			if (value != null) {
+				rowCodes[i] = codes.computeIfAbsent(value, newEntry -> { // e.g. the empty string of an invalid value
+					entries.add(newEntry);
+					return entries.size() - 1;
+				});
+			}
+		}
+		out.ensure(4).putInt(entries.size());
+		for (String entry : entries) {
+			byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+			out.ensure(4 + bytes.length).putInt(bytes.length).put(bytes);
+		}
+		byte width = (byte) (entries.size() <= 0x100 ? 1 : entries.size() <= 0x10000 ? 2 : 4);
+		ByteBuffer buffer = out.ensure(1 + rowCodes.length * width).put(width);
+		for (int code : rowCodes) {
+			if (width == 1) {
+				buffer.put((byte) code);
+			} else if (width == 2) {
+				buffer.putShort((short) code);
+			} else {
+				buffer.putInt(code);
+			}
+		}
+	}
+
+	private static void writeBitmap(int rows, IntPredicate isSet, Output out) {
+		ByteBuffer buffer = out.ensure((rows + 7) / 8);
+		for (int start = 0; start < rows; start += 8) {
+			int bits = 0;
+			for (int bit = 0; bit < 8 && start + bit < rows; bit++) {
+				if (isSet.test(start + bit)) {
+					bits |= 1 << bit;
+				}
+			}
+			buffer.put((byte) bits);
+		}
+	}
+
+	/**
+	 * @return the value as {@link LoadDataEncoder} writes it, before escaping
+	 */
+	private static byte[] bytesOf(Object value, DataType type) {
+		if (value instanceof Boolean) {
+			return new byte[] { (byte) ((Boolean) value ? '1' : '0') };
+		} else if (value instanceof byte[]) {
+			return type == DataType.BIT || type == DataType.BOOLEAN ? Long.toString(LoadDataEncoder.bitsToLong((byte[]) value)).getBytes(StandardCharsets.US_ASCII)
+					: (byte[]) value;
+		} else if (value instanceof BigDecimal) {
+			return ((BigDecimal) value).toPlainString().getBytes(StandardCharsets.US_ASCII);
+		}
+		return value.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the enum values as the driver returns them, without the quotes of the column type
+	 */
+	private static List<String> unquote(List<String> enums) {
+		List<String> values = new ArrayList<>();
+		for (String quoted : enums) {
+			String value = quoted.startsWith("'") && quoted.endsWith("'") && quoted.length() > 1 ? quoted.substring(1, quoted.length() - 1) : quoted;
+			values.add(value.replace("''", "'"));
+		}
+		return values;
+	}
+
+	/**
+	 * A little endian buffer growing as the vectors need it.
+	 */
+	private static final class Output {
+
+		private ByteBuffer buffer;
+
+		private Output(int capacity) {
+			this.buffer = ByteBuffer.allocate(capacity).order(ORDER);
+		}
+
+		private ByteBuffer ensure(int bytes) {
+			if (buffer.remaining() < bytes) {
+				ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes)).order(ORDER);
+				buffer.flip();
+				buffer = grown.put(buffer);
+			}
+			return buffer;
+		}
+	}
+
+	/**
+	 * Reads one column of a row group in row order. Fixed width vectors are read at their row's offset, byte vectors
+	 * through a cursor, which is why rows have to be asked for in order.
+	 */
+	private static final class ColumnReader {
+
+		private final ByteBuffer buffer;
+		private final byte kind;
+		private final int nulls; // offset of the null bitmap, -1 without nulls
+		private final int values; // offset of the vector, past the dictionary for DICTIONARY
+		private byte[][] dictionary;
+		private byte codeWidth;
+		private byte[] scratch = new byte[256];
+
+		private ColumnReader(ByteBuffer section, int rows) {
+			this.buffer = section.duplicate().order(ORDER);
+			this.kind = buffer.get();
+			if (buffer.get() == 1) {
+				this.nulls = buffer.position();
+				buffer.position(nulls + (rows + 7) / 8);
+			} else {
+				this.nulls = -1;
+			}
+			if (kind == DICTIONARY) {
+				dictionary = new byte[buffer.getInt()][];
+				for (int i = 0; i < dictionary.length; i++) {
+					dictionary[i] = new byte[buffer.getInt()];
+					buffer.get(dictionary[i]);
+				}
+				codeWidth = buffer.get();
+			}
+			this.values = buffer.position();
+		}
+
+		private void writeValue(int row, RowBuffer out) {
+			if (nulls >= 0 && isSet(nulls, row)) {
+				out.write(LoadDataEncoder.NULL, 0, LoadDataEncoder.NULL.length);
+				return;
+			}
+			switch (kind) {
+			case INTS:
+				LoadDataEncoder.writeLong(buffer.getInt(values + row * 4), out);
+				break;
+			case LONGS:
+				LoadDataEncoder.writeLong(buffer.getLong(values + row * 8), out);
+				break;
+			case FLOATS:
+				LoadDataEncoder.writeAscii(Float.toString(buffer.getFloat(values + row * 4)), out);
+				break;
+			case DOUBLES:
+				LoadDataEncoder.writeAscii(Double.toString(buffer.getDouble(values + row * 8)), out);
+				break;
+			case BITS:
+				out.write(isSet(values, row) ? '1' : '0');
+				break;
+			case DICTIONARY:
+				byte[] entry = dictionary[code(row)];
+				LoadDataEncoder.writeEscaped(entry, entry.length, out);
+				break;
+			case BYTES:
+				int length = buffer.getInt();
+				if (scratch.length < length) {
+					scratch = new byte[Math.max(length, scratch.length * 2)];
+				}
+				buffer.get(scratch, 0, length);
+				LoadDataEncoder.writeEscaped(scratch, length, out);
+				break;
+			default:
+				throw new IllegalStateException("Unknown columnar vector kind " + kind);
+			}
+		}
+
+		private int code(int row) {
+			if (codeWidth == 1) {
+				return buffer.get(values + row) & 0xFF;
+			}
+			return codeWidth == 2 ? buffer.getShort(values + row * 2) & 0xFFFF : buffer.getInt(values + row * 4);
+		}
+
+		private boolean isSet(int bitmap, int row) {
+			return (buffer.get(bitmap + row / 8) & (1 << (row % 8))) != 0;
+		}
+	}
+
+}
@@ -0,0 +1,7 @@
+package zhgio.myss.commons;
+
+public enum DumpFormat {
+	TSV, // gzipped chunks of LOAD DATA text
+	COLUMNAR // uncompressed row groups of typed column vectors, see ColumnarRowGroup, restored through memory maps
+
+}
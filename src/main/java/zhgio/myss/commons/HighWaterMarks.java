@@ -0,0 +1,58 @@
+package zhgio.myss.commons;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The highest value of the tracking column copied per table, kept in a properties file between incremental runs.
+ * Entries are keyed by table and column so changing a table's tracking column starts it over with a full copy.
+ */
+@Slf4j
+public class HighWaterMarks {
+
+	private final Path path;
+	private final Properties marks = new Properties();
+
+	private HighWaterMarks(Path path) {
+		this.path = path;
+	}
+
+	public static HighWaterMarks load(String fileName) throws IOException {
+		HighWaterMarks highWaterMarks = new HighWaterMarks(Paths.get(fileName));
+		if (Files.exists(highWaterMarks.path)) {
+			try (Reader reader = Files.newBufferedReader(highWaterMarks.path, StandardCharsets.UTF_8)) {
+				highWaterMarks.marks.load(reader);
+			}
+			log.info("Loaded {} high-water marks from {}", highWaterMarks.marks.size(), highWaterMarks.path.toAbsolutePath());
+		} else {
+			log.info("No high-water marks in {}, every table is copied in full", highWaterMarks.path.toAbsolutePath());
+		}
+		return highWaterMarks;
+	}
+
+	public String get(String tableName, String columnName) {
+		return marks.getProperty(tableName + "." + columnName);
+	}
+
+	/**
+	 * Records the mark and rewrites the file, so marks of finished tables survive an interrupted run.
+	 */
+	public synchronized void put(String tableName, String columnName, String mark) throws IOException {
+		marks.setProperty(tableName + "." + columnName, mark);
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			marks.store(writer, "MySQLShrinker high-water marks");
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
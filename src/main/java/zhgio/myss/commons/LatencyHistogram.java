@@ -0,0 +1,59 @@
+package zhgio.myss.commons;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with power of two microsecond buckets, good enough to tell a 2 ms table from a 2 s one.
+ * Percentiles are reported as the upper bound of the bucket they fall in.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 40; // up to 2^40 us, about 12 days
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		long micros = Math.max(1, nanos / 1000);
+		int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(bucket);
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		long samples = count.sum();
+		snapshot.put("count", samples);
+		snapshot.put("totalMillis", totalNanos.sum() / 1_000_000);
+		snapshot.put("meanMillis", samples == 0 ? 0 : totalNanos.sum() / samples / 1_000_000.0);
+		snapshot.put("p50Millis", percentileMillis(samples, 0.50));
+		snapshot.put("p90Millis", percentileMillis(samples, 0.90));
+		snapshot.put("p99Millis", percentileMillis(samples, 0.99));
+		snapshot.put("maxMillis", maxNanos.get() / 1_000_000.0);
+		return snapshot;
+	}
+
+	private double percentileMillis(long samples, double percentile) {
+		if (samples == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(samples * percentile);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return (1L << (i + 1)) / 1000.0;
+			}
+		}
+		return maxNanos.get() / 1_000_000.0;
+	}
+
+}
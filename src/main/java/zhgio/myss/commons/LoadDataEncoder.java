@@ -0,0 +1,128 @@
+package zhgio.myss.commons;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.Table;
+
+/**
+ * Encodes rows in the default LOAD DATA text format: tab separated fields, newline terminated lines,
+ * backslash escapes and \N for NULL. Strings are written as UTF-8 and binary values as raw escaped bytes.
+ */
+public class LoadDataEncoder {
+
+	private static final byte ESCAPE = '\\';
+	static final byte[] NULL = { ESCAPE, 'N' };
+	static final byte FIELD_SEPARATOR = '\t';
+	static final byte LINE_SEPARATOR = '\n';
+
+	private final DataType[] types;
+
+	public LoadDataEncoder(Table table) {
+		this.types = table.getColumns().stream().map(Column::getType).toArray(DataType[]::new);
+	}
+
+	public void encodeRow(Object[] row, RowBuffer out) {
+		for (int i = 0; i < row.length; i++) {
+			if (i > 0) {
+				out.write(FIELD_SEPARATOR);
+			}
+			encodeValue(row[i], types[i], out);
+		}
+		out.write(LINE_SEPARATOR);
+	}
+
+	private void encodeValue(Object value, DataType type, RowBuffer out) {
+		if (value == null) {
+			out.write(NULL, 0, NULL.length);
+		} else if (value instanceof Boolean) { // BIT(1) and tinyint(1), created as TINYINT(1) on the destination
+			out.write((Boolean) value ? '1' : '0');
+		} else if (value instanceof byte[]) {
+			byte[] bytes = (byte[]) value;
+			if (type == DataType.BIT || type == DataType.BOOLEAN) { // wider BIT(n) values arrive as bytes but land in a numeric column
+				writeAscii(Long.toString(bitsToLong(bytes)), out);
+			} else {
+				writeEscaped(bytes, bytes.length, out);
+			}
+		} else if (value instanceof BigDecimal) {
+			writeAscii(((BigDecimal) value).toPlainString(), out);
+		} else if (value instanceof Number || value instanceof java.util.Date) {
+			writeAscii(value.toString(), out);
+		} else { // CHAR, VARCHAR, ENUM and anything else the driver hands over as text
+			byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+			writeEscaped(bytes, bytes.length, out);
+		}
+	}
+
+	/**
+	 * Escapes the bytes that have a meaning in the format, copying the runs in between in one go.
+	 * Multi-byte UTF-8 sequences never contain ASCII bytes, so text and binary share this path.
+	 */
+	static void writeEscaped(byte[] bytes, int length, RowBuffer out) {
+		int runStart = 0;
+		for (int i = 0; i < length; i++) {
+			byte escaped = escapeOf(bytes[i]);
+			if (escaped != 0) {
+				out.write(bytes, runStart, i - runStart);
+				out.write(ESCAPE);
+				out.write(escaped);
+				runStart = i + 1;
+			}
+		}
+		out.write(bytes, runStart, length - runStart);
+	}
+
+	private static byte escapeOf(byte b) {
+		switch (b) {
+		case '\\':
+			return '\\';
+		case '\t':
+			return 't';
+		case '\n':
+			return 'n';
+		case '\r':
+			return 'r';
+		case 0:
+			return '0';
+		default:
+			return 0;
+		}
+	}
+
+	static void writeAscii(String value, RowBuffer out) {
+		for (int i = 0; i < value.length(); i++) {
+			out.write(value.charAt(i));
+		}
+	}
+
+	/**
+	 * Writes the decimal digits straight into the buffer, no String in between.
+	 */
+	static void writeLong(long value, RowBuffer out) {
+		if (value == Long.MIN_VALUE) { // has no positive counterpart
+			writeAscii(Long.toString(value), out);
+			return;
+		}
+		if (value < 0) {
+			out.write('-');
+			value = -value;
+		}
+		long divisor = 1;
+		while (divisor <= value / 10) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			out.write((int) ('0' + value / divisor % 10));
+		}
+	}
+
+	static long bitsToLong(byte[] bytes) {
+		long value = 0;
+		for (byte b : bytes) {
+			value = (value << 8) | (b & 0xFF);
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,128 @@
+package zhgio.myss.commons;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash set of primitive longs, so tens of millions of keys cost 8 to 16 bytes each
+ * instead of a boxed Long plus a HashMap node.
+ */
+public class LongHashSet {
+
+	private static final long EMPTY = 0L; // 0 is tracked separately so it can mark free slots
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] slots;
+	private int size;
+	private boolean containsZero;
+	private int resizeThreshold;
+
+	public LongHashSet() {
+		this(1024);
+	}
+
+	public LongHashSet(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+
+	/**
+	 * @return true if the value was not present yet
+	 */
+	public boolean add(long value) {
+		if (value == EMPTY) {
+			if (containsZero) {
+				return false;
+			}
+			containsZero = true;
+			size++;
+			return true;
+		}
+		int mask = slots.length - 1;
+		int index = mix(value) & mask;
+		while (slots[index] != EMPTY) {
+			if (slots[index] == value) {
+				return false;
+			}
+			index = (index + 1) & mask;
+		}
+		slots[index] = value;
+		if (++size >= resizeThreshold) {
+			rehash(slots.length << 1);
+		}
+		return true;
+	}
+
+	public boolean contains(long value) {
+		if (value == EMPTY) {
+			return containsZero;
+		}
+		int mask = slots.length - 1;
+		int index = mix(value) & mask;
+		while (slots[index] != EMPTY) {
+			if (slots[index] == value) {
+				return true;
+			}
+			index = (index + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(slots, EMPTY);
+		containsZero = false;
+		size = 0;
+	}
+
+	public long[] toArray() {
+		long[] values = new long[size];
+		int i = 0;
+		if (containsZero) {
+			values[i++] = EMPTY;
+		}
+		for (long slot : slots) {
+			if (slot != EMPTY) {
+				values[i++] = slot;
+			}
+		}
+		return values;
+	}
+
+	private void rehash(int capacity) {
+		long[] old = slots;
+		allocate(capacity);
+		size = containsZero ? 1 : 0;
+		int mask = slots.length - 1;
+		for (long value : old) {
+			if (value != EMPTY) {
+				int index = mix(value) & mask;
+				while (slots[index] != EMPTY) {
+					index = (index + 1) & mask;
+				}
+				slots[index] = value;
+				size++;
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		this.slots = new long[capacity];
+		this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	/**
+	 * spreads sequential ids (the usual auto increment keys) over the whole table
+	 */
+	private static int mix(long value) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
@@ -0,0 +1,164 @@
+package zhgio.myss.commons;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.Index;
+import zhgio.myss.elements.Table;
+
+/**
+ * Column masking rules read from the rules file, applied to the rows on their way from the origin to the destination:
+ * <pre>
+ * mask.salt=some secret
+ * mask.column.users.email=hash
+ * mask.column.users.last_name=replace:Doe
+ * mask.column.*.phone=fake
+ * mask.type.DATE=fake
+ * mask.column.users.created_at=keep
+ * </pre>
+ * A rule for the table's column wins over a rule for that column in every table (*), which wins over a rule for the
+ * column's data type. See {@link ColumnMask} for the operators.
+ * <p>
+ * Columns of a primary key, a unique index or a foreign key are never masked: hashed and faked values can collide, and
+ * the copy resumes and refreshes by the origin's key values. A table rule for such a column fails the run, the broader
+ * rules skip it.
+ */
+@Slf4j
+public class MaskingRules {
+
+	private static final String COLUMN_PREFIX = "mask.column.";
+	private static final String TYPE_PREFIX = "mask.type.";
+	private static final String SALT = "mask.salt";
+	private static final String ANY_TABLE = "*";
+
+	private final Map<String, String> columnRules = new HashMap<>(); // by table.column
+	private final Map<DataType, String> typeRules = new EnumMap<>(DataType.class);
+	private String salt = Keyword.EMPTY_STR;
+
+	private MaskingRules() {
+	}
+
+	public static MaskingRules load(String fileName) {
+		MaskingRules maskingRules = new MaskingRules();
+		Path path = Paths.get(fileName);
+		if (!Files.exists(path)) {
+			return maskingRules;
+		}
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read rules file " + path.toAbsolutePath(), e);
+		}
+		for (String key : properties.stringPropertyNames()) {
+			String value = properties.getProperty(key).trim();
+			if (key.equals(SALT)) {
+				maskingRules.salt = value;
+			} else if (key.startsWith(COLUMN_PREFIX)) {
+				ColumnMask.validate(value);
+				maskingRules.columnRules.put(key.substring(COLUMN_PREFIX.length()), value);
+			} else if (key.startsWith(TYPE_PREFIX)) {
+				ColumnMask.validate(value);
+				maskingRules.typeRules.put(DataType.valueOf(key.substring(TYPE_PREFIX.length()).toUpperCase()), value);
+			}
+		}
+		if (!maskingRules.isEmpty()) {
+			log.info("Loaded {} column and {} type masking rules from {}", maskingRules.columnRules.size(), maskingRules.typeRules.size(), path.toAbsolutePath());
+			if (maskingRules.salt.isEmpty()) {
+				log.warn("No {} set, hashed and faked values can be matched against guessed originals", SALT);
+			}
+		}
+		return maskingRules;
+	}
+
+	public boolean isEmpty() {
+		return columnRules.isEmpty() && typeRules.isEmpty();
+	}
+
+	/**
+	 * Resolves the rule of every column once, the masker then works on row positions only.
+	 * @return a new masker for one stream of the table's rows, null if none of its columns is masked
+	 * @throws IllegalStateException if a rule does not fit its column
+	 */
+	public RowMasker compile(Table table) {
+		if (isEmpty()) {
+			return null;
+		}
+		List<Integer> positions = new ArrayList<>();
+		List<ColumnMask> masks = new ArrayList<>();
+		int position = 0;
+		Set<String> keyColumns = getKeyColumns(table);
+		for (Column column : table.getColumns()) {
+			String spec = getRule(table.getTableName(), column, keyColumns.contains(column.getColumnName()));
+			ColumnMask mask = spec == null ? null : ColumnMask.compile(spec, column, salt);
+			if (mask != null) {
+				positions.add(position);
+				masks.add(mask);
+			}
+			position++;
+		}
+		return masks.isEmpty() ? null : new RowMasker(positions.stream().mapToInt(Integer::intValue).toArray(), masks.toArray(new ColumnMask[0]));
+	}
+
+	/**
+	 * Compiles the maskers of every table, so a rule not fitting its column fails the run before anything is copied.
+	 */
+	public void validate(List<Table> tables) {
+		int maskedTables = 0;
+		for (Table table : tables) {
+			if (compile(table) != null) {
+				maskedTables++;
+			}
+		}
+		if (!isEmpty()) {
+			log.info("Masking columns of {} tables", maskedTables);
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException if the table's own rule masks a key column
+	 */
+	private String getRule(String tableName, Column column, boolean keyColumn) {
+		String spec = columnRules.get(tableName + "." + column.getColumnName());
+		if (keyColumn) {
+			if (spec != null && !ColumnMask.KEEP.equals(spec)) {
+				throw new IllegalStateException(String.format("Cannot apply mask %s to %s.%s, the column is part of a primary, unique or foreign key",
+						spec, tableName, column.getColumnName()));
+			}
+			return null;
+		}
+		if (spec == null) {
+			spec = columnRules.get(ANY_TABLE + "." + column.getColumnName());
+		}
+		return spec != null ? spec : typeRules.get(column.getType());
+	}
+
+	private static Set<String> getKeyColumns(Table table) {
+		Set<String> keyColumns = new HashSet<>();
+		if (table.getPrimaryKeys() != null) {
+			table.getPrimaryKeys().forEach(key -> keyColumns.add(key.getColumnName()));
+		}
+		if (table.getForeignKeys() != null) {
+			table.getForeignKeys().forEach(key -> keyColumns.add(key.getFkColumnName()));
+		}
+		if (table.getIndices() != null) {
+			table.getIndices().stream().filter(Index::isUnique).forEach(index -> keyColumns.addAll(index.getColumnReferences()));
+		}
+		return keyColumns;
+	}
+
+}
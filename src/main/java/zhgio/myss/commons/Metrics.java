@@ -0,0 +1,128 @@
+package zhgio.myss.commons;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Process wide instrumentation of a run: phase timers, per-table latency histograms, copied rows and bytes with their
+ * rates, JDBC round trips per metadata method and connection wait times.
+ * Everything is lock free so it can be recorded from any worker; read it live through {@link #snapshot()}.
+ */
+@Slf4j
+public final class Metrics {
+
+	// phase names
+	public static final String INTROSPECTION = "introspection";
+	public static final String PLANNING = "planning";
+	public static final String DDL = "ddl";
+	public static final String CONSTRAINTS = "constraints";
+	public static final String COPY = "copy";
+	public static final String INDICES = "indices";
+
+	// latency names
+	public static final String DDL_STATEMENT = "ddl.statement";
+	public static final String COPY_TABLE = "copy.table";
+	public static final String COPY_CHUNK = "copy.chunk";
+	public static final String CONNECTION_WAIT = "connection.wait";
+
+	private static final Map<String, LatencyHistogram> PHASES = new ConcurrentHashMap<>();
+	private static final Map<String, LatencyHistogram> LATENCIES = new ConcurrentHashMap<>();
+	private static final Map<String, LongAdder> ROUND_TRIPS = new ConcurrentHashMap<>();
+	private static final LongAdder ROWS = new LongAdder();
+	private static final LongAdder BYTES = new LongAdder();
+	private static final AtomicLong FIRST_TRANSFER_NANOS = new AtomicLong();
+	private static volatile long runStartNanos = System.nanoTime();
+
+	private Metrics() {
+	}
+
+	public static void reset() {
+		PHASES.clear();
+		LATENCIES.clear();
+		ROUND_TRIPS.clear();
+		ROWS.reset();
+		BYTES.reset();
+		FIRST_TRANSFER_NANOS.set(0);
+		runStartNanos = System.nanoTime();
+	}
+
+	/**
+	 * @param startNanos - System.nanoTime() taken when the phase started
+	 */
+	public static void recordPhase(String phase, long startNanos) {
+		long nanos = System.nanoTime() - startNanos;
+		PHASES.computeIfAbsent(phase, name -> new LatencyHistogram()).record(nanos);
+		log.info("Phase {} took {} ms", phase, TimeUnit.NANOSECONDS.toMillis(nanos));
+	}
+
+	/**
+	 * @param startNanos - System.nanoTime() taken when the measured operation started
+	 */
+	public static void recordLatency(String name, long startNanos) {
+		LATENCIES.computeIfAbsent(name, key -> new LatencyHistogram()).record(System.nanoTime() - startNanos);
+	}
+
+	public static void addRows(long rows) {
+		FIRST_TRANSFER_NANOS.compareAndSet(0, System.nanoTime());
+		ROWS.add(rows);
+	}
+
+	/**
+	 * @param bytes - encoded row bytes handed to the destination, before any compression
+	 */
+	public static void addBytes(long bytes) {
+		FIRST_TRANSFER_NANOS.compareAndSet(0, System.nanoTime());
+		BYTES.add(bytes);
+	}
+
+	public static void countRoundTrips(String method, int roundTrips) {
+		ROUND_TRIPS.computeIfAbsent(method, name -> new LongAdder()).add(roundTrips);
+	}
+
+	public static Map<String, Object> snapshot() {
+		long now = System.nanoTime();
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(now - runStartNanos));
+		snapshot.put("phases", snapshotAll(PHASES));
+		snapshot.put("latencies", snapshotAll(LATENCIES));
+
+		long rows = ROWS.sum();
+		long bytes = BYTES.sum();
+		long firstTransfer = FIRST_TRANSFER_NANOS.get();
+		double transferSeconds = firstTransfer == 0 ? 0 : Math.max(1, now - firstTransfer) / 1e9;
+		snapshot.put("rows", rows);
+		snapshot.put("bytes", bytes);
+		snapshot.put("rowsPerSecond", transferSeconds == 0 ? 0 : (long) (rows / transferSeconds));
+		snapshot.put("bytesPerSecond", transferSeconds == 0 ? 0 : (long) (bytes / transferSeconds));
+
+		Map<String, Long> roundTrips = new TreeMap<>();
+		ROUND_TRIPS.forEach((method, count) -> roundTrips.put(method, count.sum()));
+		snapshot.put("roundTrips", roundTrips);
+		return snapshot;
+	}
+
+	public static void writeReport(Path file) throws IOException {
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), snapshot());
+		log.info("Wrote the metrics report to {}", file.toAbsolutePath());
+	}
+
+	private static Map<String, Object> snapshotAll(Map<String, LatencyHistogram> histograms) {
+		Map<String, Object> snapshots = new TreeMap<>();
+		histograms.forEach((name, histogram) -> snapshots.put(name, histogram.snapshot()));
+		return Collections.unmodifiableMap(snapshots);
+	}
+
+}
@@ -0,0 +1,156 @@
+package zhgio.myss.commons;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only record of the work a run has completed, so a restarted run can skip it.
+ * Every entry is one "key TAB value" line appended with a single write; the channel is only forced to disk every
+ * syncInterval entries (and on close), which keeps the journal out of the copy throughput.
+ * A finished run deletes its journal, an existing journal therefore always belongs to an interrupted run.
+ */
+@Slf4j
+public class ProgressJournal implements AutoCloseable {
+
+	private static final String DONE = "done";
+
+	private final Path file;
+	private final int syncInterval;
+	private final Map<String, String> entries = new ConcurrentHashMap<>();
+	private final boolean resumed;
+	private final FileChannel channel;
+	private int unsyncedEntries;
+
+	public ProgressJournal(Path file, int syncInterval) throws IOException {
+		this.file = file;
+		this.syncInterval = syncInterval;
+		this.resumed = Files.exists(file) && replay();
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.channel.position(this.channel.size());
+		if (resumed) {
+			log.info("Resuming an interrupted run, {} entries in journal {}", entries.size(), file);
+		}
+	}
+
+	/**
+	 * @return true when the journal was left behind by an interrupted run, so partially written work may exist
+	 */
+	public boolean isResumed() {
+		return resumed;
+	}
+
+	public boolean isDone(String key) {
+		return entries.containsKey(key);
+	}
+
+	public void markDone(String key) throws IOException {
+		put(key, DONE);
+	}
+
+	public String get(String key) {
+		return entries.get(key);
+	}
+
+	public synchronized void put(String key, String value) throws IOException {
+		ByteBuffer line = ByteBuffer.wrap((key + '\t' + value + '\n').getBytes(StandardCharsets.UTF_8));
+		while (line.hasRemaining()) {
+			channel.write(line);
+		}
+		entries.put(key, value);
+		if (++unsyncedEntries >= syncInterval) {
+			sync();
+		}
+	}
+
+	public synchronized void sync() throws IOException {
+		if (unsyncedEntries > 0) {
+			channel.force(false);
+			unsyncedEntries = 0;
+		}
+	}
+
+	/**
+	 * Closes and deletes the journal, the next run starts from scratch.
+	 */
+	public void finish() throws IOException {
+		close();
+		Files.deleteIfExists(file);
+		log.info("Run complete, removed journal {}", file);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel.isOpen()) {
+			sync();
+			channel.close();
+		}
+	}
+
+	/**
+	 * Loads the complete lines of an existing journal and cuts off a line torn by a crash mid-write.
+	 */
+	private boolean replay() throws IOException {
+		byte[] content = Files.readAllBytes(file);
+		int lineStart = 0;
+		for (int i = 0; i < content.length; i++) {
+			if (content[i] == '\n') {
+				String line = new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8);
+				int separator = line.indexOf('\t');
+				if (separator > 0) {
+					entries.put(line.substring(0, separator), line.substring(separator + 1));
+				}
+				lineStart = i + 1;
+			}
+		}
+		if (lineStart < content.length) {
+			try (FileChannel truncating = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				truncating.truncate(lineStart);
+			}
+		}
+		return true;
+	}
+
+	// journal keys
+
+	public static String createKey(String tableName) {
+		return "create " + tableName;
+	}
+
+	public static String constraintsKey(String tableName) {
+		return "constraints " + tableName;
+	}
+
+	public static String indicesKey(String tableName) {
+		return "indices " + tableName;
+	}
+
+	public static String tableKey(String tableName) {
+		return "table " + tableName;
+	}
+
+	public static String splitKey(String tableName) {
+		return "split " + tableName;
+	}
+
+	/**
+	 * @param step - ddl or indices
+	 * @param destination - position of the fan-out destination in the settings
+	 */
+	public static String fanOutKey(String step, int destination) {
+		return "fan-out " + step + " " + destination;
+	}
+
+	public static String chunkKey(String tableName, long lowerBound, long upperBound) {
+		return "chunk " + tableName + " " + lowerBound + " " + upperBound;
+	}
+
+}
@@ -5,9 +5,51 @@ public class Query {
 	private Query() {}
 
 	// queries
-	public static final String QUERY_SIZES_ALL_TABLES = "SELECT table_name AS `Table`, round(((data_length + index_length) / 1024 / 1024), 2) `Size in MB` FROM information_schema.TABLES WHERE table_schema = ? ORDER BY 2 DESC;";
+	public static final String QUERY_SIZES_ALL_TABLES = "SELECT TABLE_NAME, TABLE_ROWS, DATA_LENGTH, INDEX_LENGTH, round(((data_length + index_length) / 1024 / 1024), 2) AS `size-MB` FROM information_schema.TABLES "
+			+ "WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE' ORDER BY 5 DESC;";
 	public static final String QUERY_SIZE_ONE_TABLE = "SELECT round(((data_length + index_length) / 1024 / 1024), 2) AS `size-MB` FROM information_schema.TABLES WHERE table_schema = :tableSchema AND table_name = :tableName;";
 	public static final String QUERY_TABLE_STATUS = "SHOW TABLE STATUS WHERE name = :name;";
-	public static final String QUERY_TABLE_EXACT_COUNT = "SELECT COUNT(*) FROM ?;";
+
+	// formats: table name
+	public static final String QUERY_TABLE_EXACT_COUNT = "SELECT COUNT(*) FROM `%s`;";
+	// formats: key column, table name, inclusive lower and upper bound
+	public static final String QUERY_KEY_RANGE_EXACT_COUNT = "SELECT COUNT(*) FROM `%2$s` WHERE `%1$s` >= %3$d AND `%1$s` <= %4$d;";
+
+	// formats: key column, table name
+	public static final String QUERY_KEY_BOUNDS = "SELECT MIN(`%1$s`) AS lower_bound, MAX(`%1$s`) AS upper_bound FROM `%2$s`;";
+
+	// formats: column, table name
+	public static final String QUERY_HIGH_WATER_MARK = "SELECT MAX(`%1$s`) AS high_water_mark FROM `%2$s`;";
+	// formats: key column, table name, inclusive lower and upper bound
+	public static final String QUERY_DELETE_KEY_RANGE = "DELETE FROM `%2$s` WHERE `%1$s` >= %3$d AND `%1$s` <= %4$d;";
+	// formats: table name
+	public static final String QUERY_TRUNCATE_TABLE = "TRUNCATE TABLE `%s`;";
+
+	// formats: table name, column list. The file name is a placeholder, the driver is handed the input stream directly
+	public static final String QUERY_LOAD_DATA_LOCAL = "LOAD DATA LOCAL INFILE 'myss-stream' INTO TABLE `%s` CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (%s)";
+
+	// set-based information_schema queries, one round trip each for the whole schema
+	public static final String QUERY_SCHEMA_TABLES = "SELECT TABLE_NAME, TABLE_ROWS, round(((data_length + index_length) / 1024 / 1024), 2) AS `size-MB` FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE' ORDER BY TABLE_NAME;";
+	public static final String QUERY_SCHEMA_COLUMNS = "SELECT TABLE_NAME, COLUMN_NAME, DATA_TYPE, COLUMN_TYPE, IS_NULLABLE, COLUMN_DEFAULT, EXTRA FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME, ORDINAL_POSITION;";
+	public static final String QUERY_SCHEMA_STATISTICS = "SELECT TABLE_NAME, INDEX_NAME, NON_UNIQUE, SEQ_IN_INDEX, COLUMN_NAME, COLLATION FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME, NON_UNIQUE, INDEX_NAME, SEQ_IN_INDEX;";
+	public static final String QUERY_SCHEMA_FOREIGN_KEYS = "SELECT kcu.TABLE_NAME, kcu.CONSTRAINT_NAME, kcu.COLUMN_NAME, kcu.REFERENCED_TABLE_NAME, kcu.REFERENCED_COLUMN_NAME FROM information_schema.KEY_COLUMN_USAGE kcu "
+			+ "JOIN information_schema.REFERENTIAL_CONSTRAINTS rc ON rc.CONSTRAINT_SCHEMA = kcu.CONSTRAINT_SCHEMA AND rc.TABLE_NAME = kcu.TABLE_NAME AND rc.CONSTRAINT_NAME = kcu.CONSTRAINT_NAME "
+			+ "WHERE kcu.TABLE_SCHEMA = ? ORDER BY kcu.TABLE_NAME, kcu.CONSTRAINT_NAME, kcu.ORDINAL_POSITION;";
+	// cheap per-table facts that change whenever the table definition does: create time, column count and checksums over the column, index and foreign key definitions
+	// the referenced schema is left out of the foreign key checksum, so tables of identical schemas get identical fingerprints
+	public static final String QUERY_SCHEMA_FINGERPRINTS = "SELECT t.TABLE_NAME, t.CREATE_TIME, c.column_count, c.column_checksum, IFNULL(s.index_checksum, 0) AS index_checksum, "
+			+ "IFNULL(f.foreign_key_checksum, 0) AS foreign_key_checksum FROM information_schema.TABLES t "
+			+ "JOIN (SELECT TABLE_NAME, COUNT(*) AS column_count, SUM(CRC32(CONCAT_WS('|', COLUMN_NAME, ORDINAL_POSITION, COLUMN_TYPE, IS_NULLABLE, COLUMN_DEFAULT, EXTRA))) AS column_checksum "
+			+ "FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = ? GROUP BY TABLE_NAME) c ON c.TABLE_NAME = t.TABLE_NAME "
+			+ "LEFT JOIN (SELECT TABLE_NAME, SUM(CRC32(CONCAT_WS('|', INDEX_NAME, SEQ_IN_INDEX, COLUMN_NAME, COLLATION))) AS index_checksum "
+			+ "FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = ? GROUP BY TABLE_NAME) s ON s.TABLE_NAME = t.TABLE_NAME "
+			+ "LEFT JOIN (SELECT kcu.TABLE_NAME, SUM(CRC32(CONCAT_WS('|', kcu.CONSTRAINT_NAME, kcu.ORDINAL_POSITION, kcu.COLUMN_NAME, kcu.REFERENCED_TABLE_NAME, kcu.REFERENCED_COLUMN_NAME, "
+			+ "rc.UPDATE_RULE, rc.DELETE_RULE))) AS foreign_key_checksum FROM information_schema.KEY_COLUMN_USAGE kcu "
+			+ "JOIN information_schema.REFERENTIAL_CONSTRAINTS rc ON rc.CONSTRAINT_SCHEMA = kcu.CONSTRAINT_SCHEMA AND rc.TABLE_NAME = kcu.TABLE_NAME AND rc.CONSTRAINT_NAME = kcu.CONSTRAINT_NAME "
+			+ "WHERE kcu.TABLE_SCHEMA = ? GROUP BY kcu.TABLE_NAME) f ON f.TABLE_NAME = t.TABLE_NAME "
+			+ "WHERE t.TABLE_SCHEMA = ? AND t.TABLE_TYPE = 'BASE TABLE' ORDER BY t.TABLE_NAME;";
+
+	public static final String QUERY_SCHEMAS_LIKE = "SELECT SCHEMA_NAME FROM information_schema.SCHEMATA WHERE SCHEMA_NAME LIKE ? ORDER BY SCHEMA_NAME;";
+	public static final String QUERY_CREATE_SCHEMA = "CREATE DATABASE IF NOT EXISTS `%s`;";
 
 }
@@ -0,0 +1,31 @@
+package zhgio.myss.commons;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable in-memory byte buffer that can be read back without copying its content.
+ */
+public class RowBuffer extends ByteArrayOutputStream {
+
+	public RowBuffer(int initialSize) {
+		super(initialSize);
+	}
+
+	/**
+	 * @return a stream over the current content, only valid until the next write or reset
+	 */
+	public InputStream toInputStream() {
+		return new ByteArrayInputStream(buf, 0, count);
+	}
+
+	/**
+	 * @return a byte buffer over the current content, only valid until the next write or reset
+	 */
+	public ByteBuffer toByteBuffer() {
+		return ByteBuffer.wrap(buf, 0, count);
+	}
+
+}
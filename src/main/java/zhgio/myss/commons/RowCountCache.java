@@ -0,0 +1,71 @@
+package zhgio.myss.commons;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exact row counts kept in a properties file between runs, every count with the time it was taken at.
+ * A count is served only while it is younger than the maximum age.
+ */
+@Slf4j
+public class RowCountCache {
+
+	private final Path path;
+	private final long maxAgeMillis;
+	private final Properties counts = new Properties();
+
+	private RowCountCache(Path path, long maxAgeMillis) {
+		this.path = path;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	public static RowCountCache load(Path path, long maxAgeMillis) throws IOException {
+		RowCountCache cache = new RowCountCache(path, maxAgeMillis);
+		if (Files.exists(path)) {
+			try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+				cache.counts.load(reader);
+			}
+			log.info("Loaded {} row counts from {}", cache.counts.size(), path.toAbsolutePath());
+		}
+		return cache;
+	}
+
+	/**
+	 * @return the cached count, null if there is none or it is stale
+	 */
+	public Long get(String tableName) {
+		String entry = counts.getProperty(tableName);
+		if (entry == null) {
+			return null;
+		}
+		String[] countAndTime = entry.split(" ");
+		if (System.currentTimeMillis() - Long.parseLong(countAndTime[1]) > maxAgeMillis) {
+			return null;
+		}
+		return Long.parseLong(countAndTime[0]);
+	}
+
+	public synchronized void put(String tableName, long count) {
+		counts.setProperty(tableName, count + " " + System.currentTimeMillis());
+	}
+
+	/**
+	 * Rewrites the file through a temporary one, so a crash never leaves half of it.
+	 */
+	public synchronized void save() throws IOException {
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			counts.store(writer, "MySQLShrinker exact row counts: count and epoch millis taken at");
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
@@ -0,0 +1,27 @@
+package zhgio.myss.commons;
+
+/**
+ * The masking operators of one table compiled into flat arrays: the positions of the masked columns in a row and the
+ * operator of each. Rows are masked in place, nothing is looked up or allocated per row beyond the masked values.
+ * Holds operator state, so it belongs to the thread reading one stream of rows.
+ */
+public final class RowMasker {
+
+	private final int[] positions;
+	private final ColumnMask[] masks;
+
+	RowMasker(int[] positions, ColumnMask[] masks) {
+		this.positions = positions;
+		this.masks = masks;
+	}
+
+	public void mask(Object[] row) {
+		for (int i = 0; i < positions.length; i++) {
+			Object value = row[positions[i]];
+			if (value != null) {
+				row[positions[i]] = masks[i].apply(value);
+			}
+		}
+	}
+
+}
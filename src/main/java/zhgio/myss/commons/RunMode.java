@@ -0,0 +1,10 @@
+package zhgio.myss.commons;
+
+public enum RunMode {
+	CLONE, // origin to a live destination schema
+	DUMP, // origin to a dump directory
+	RESTORE, // dump directory to the destination schema, no origin access
+	REFRESH, // upserts the origin rows changed since the previous refresh into an existing destination schema
+	DIFF // alters an existing destination schema into the origin's structure, only what differs is touched
+
+}
@@ -0,0 +1,218 @@
+package zhgio.myss.commons;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.Index;
+import zhgio.myss.elements.Key;
+import zhgio.myss.elements.Table;
+
+/**
+ * Local binary snapshot of the introspected schema model, every table stored with the fingerprint it had when loaded.
+ * A table is served from the snapshot only while its fingerprint still matches, so changed tables are invalidated
+ * one by one. The layout is a plain DataOutput stream, versioned so an incompatible snapshot is simply ignored.
+ */
+@Slf4j
+public class SchemaCache {
+
+	private static final int MAGIC = 0x4d595353; // "MYSS"
+	private static final int VERSION = 2;
+	private static final int UNMAPPED_TYPE = -1; // the column's type has no DataType
+
+	private final Path file;
+
+	public SchemaCache(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * @param fingerprints - current fingerprint by table name
+	 * @return the cached tables whose fingerprint still matches, by table name
+	 */
+	public Map<String, Table> load(Map<String, String> fingerprints) {
+		Map<String, Table> tables = new HashMap<>();
+		if (!Files.exists(file)) {
+			return tables;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				log.warn("Ignoring schema cache {} written by another version", file);
+				return tables;
+			}
+			int tableCount = in.readInt();
+			for (int i = 0; i < tableCount; i++) {
+				String fingerprint = in.readUTF();
+				Table table = readTable(in);
+				if (fingerprint.equals(fingerprints.get(table.getTableName()))) {
+					tables.put(table.getTableName(), table);
+				}
+			}
+		} catch (IOException e) {
+			log.warn("Ignoring unreadable schema cache {}: {}", file, e.getMessage());
+			tables.clear();
+		}
+		return tables;
+	}
+
+	/**
+	 * Replaces the snapshot with the given tables, written to a temporary file first so a crash never leaves half a cache.
+	 */
+	public void save(List<Table> tables, Map<String, String> fingerprints) throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(tables.size());
+			for (Table table : tables) {
+				out.writeUTF(String.valueOf(fingerprints.get(table.getTableName())));
+				writeTable(out, table);
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		log.info("Saved the model of {} tables to schema cache {}", tables.size(), file);
+	}
+
+	private void writeTable(DataOutputStream out, Table table) throws IOException {
+		writeString(out, table.getSchemaName());
+		out.writeUTF(table.getTableName());
+		writeString(out, table.getTableSizeInMb() == null ? null : table.getTableSizeInMb().toPlainString());
+		out.writeLong(table.getNumberOfRowsApprox());
+		out.writeInt(table.getColumns().size());
+		for (Column column : table.getColumns()) {
+			writeColumn(out, column);
+		}
+		writeKeys(out, table.getPrimaryKeys());
+		writeKeys(out, table.getForeignKeys());
+		out.writeInt(table.getIndices().size());
+		for (Index index : table.getIndices()) {
+			writeString(out, index.getIndexName());
+			out.writeBoolean(index.isAscending());
+			out.writeBoolean(index.isUnique());
+			writeStrings(out, index.getColumnReferences());
+		}
+	}
+
+	private Table readTable(DataInputStream in) throws IOException {
+		Table table = new Table(readString(in), in.readUTF());
+		String sizeInMb = readString(in);
+		table.setTableSizeInMb(sizeInMb == null ? null : new BigDecimal(sizeInMb));
+		table.setNumberOfRowsApprox(in.readLong());
+		int columnCount = in.readInt();
+		Set<Column> columns = new LinkedHashSet<>();
+		for (int i = 0; i < columnCount; i++) {
+			columns.add(readColumn(in, table));
+		}
+		table.setColumns(columns);
+		table.setPrimaryKeys(readKeys(in));
+		table.setForeignKeys(readKeys(in));
+		int indexCount = in.readInt();
+		Set<Index> indices = new LinkedHashSet<>();
+		for (int i = 0; i < indexCount; i++) {
+			String indexName = readString(in);
+			boolean ascending = in.readBoolean();
+			boolean unique = in.readBoolean();
+			indices.add(new Index(table.getTableName(), indexName, new LinkedHashSet<>(readStrings(in)), ascending, unique));
+		}
+		table.setIndices(indices);
+		return table;
+	}
+
+	private void writeColumn(DataOutputStream out, Column column) throws IOException {
+		out.writeUTF(column.getColumnName());
+		out.writeByte(column.getType() == null ? UNMAPPED_TYPE : column.getType().ordinal());
+		out.writeInt(column.getColumnSize());
+		out.writeBoolean(column.isNullable());
+		out.writeBoolean(column.isAutoincrement());
+		out.writeBoolean(column.isDefaultable());
+		writeString(out, column.getDefaultValue());
+		out.writeInt(column.getDecimalDigits());
+		out.writeBoolean(column.isUnsigned());
+		out.writeBoolean(column.getEnums() != null);
+		if (column.getEnums() != null) {
+			writeStrings(out, column.getEnums());
+		}
+		writeString(out, column.getExtra());
+	}
+
+	private Column readColumn(DataInputStream in, Table table) throws IOException {
+		Column column = new Column(table);
+		column.setColumnName(in.readUTF());
+		byte type = in.readByte();
+		column.setType(type == UNMAPPED_TYPE ? null : DataType.values()[type]);
+		column.setColumnSize(in.readInt());
+		column.setNullable(in.readBoolean());
+		column.setAutoincrement(in.readBoolean());
+		column.setDefaultable(in.readBoolean());
+		column.setDefaultValue(readString(in));
+		column.setDecimalDigits(in.readInt());
+		column.setUnsigned(in.readBoolean());
+		column.setEnums(in.readBoolean() ? readStrings(in) : null);
+		column.setExtra(readString(in));
+		return column;
+	}
+
+	private void writeKeys(DataOutputStream out, Set<Key> keys) throws IOException {
+		out.writeInt(keys.size());
+		for (Key key : keys) {
+			out.writeBoolean(key.isPrimary());
+			writeString(out, key.getTableName());
+			writeString(out, key.getColumnName());
+			writeString(out, key.getFkName());
+			writeString(out, key.getFkColumnName());
+		}
+	}
+
+	private Set<Key> readKeys(DataInputStream in) throws IOException {
+		int keyCount = in.readInt();
+		Set<Key> keys = new HashSet<>();
+		for (int i = 0; i < keyCount; i++) {
+			keys.add(new Key(in.readBoolean(), readString(in), readString(in), readString(in), readString(in)));
+		}
+		return keys;
+	}
+
+	private void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+		out.writeInt(values.size());
+		for (String value : values) {
+			writeString(out, value);
+		}
+	}
+
+	private List<String> readStrings(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<String> values = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			values.add(readString(in));
+		}
+		return values;
+	}
+
+	private void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+}
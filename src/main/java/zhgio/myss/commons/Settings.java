@@ -0,0 +1,145 @@
+package zhgio.myss.commons;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import lombok.Data;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.MySqlShrinkerApplication;
+
+/**
+ * Connection settings, run mode and what a run copies. Defaults come from the constants in {@link MySqlShrinkerApplication},
+ * then a properties file (myss.properties, or the one given with --config=path) and finally --key=value arguments
+ * override them, e.g.
+ * <pre>
+ * --origin.url=jdbc:mysql://db:3306/ --origin.schema=shop --destination.schema=shop_small --run.mode=CLONE --run.dry-run=true
+ * --origin.schemas=tenant_% --destination.schema={schema}_small
+ * --copy.data=true --copy.write-mode=LOAD_DATA --copy.defer-indices=true --rules.file=shop-rules.properties
+ * </pre>
+ * Tuning knobs like worker counts, batch and buffer sizes stay constants of {@link MySqlShrinkerApplication}.
+ */
+@Data
+@Slf4j
+public class Settings {
+
+	public static final String DEFAULT_CONFIG_FILE = "myss.properties";
+	private static final String CONFIG_ARGUMENT = "config";
+
+	private String originUrl = MySqlShrinkerApplication.ORIGIN_SCHEMA_URL;
+	private String originSchema = MySqlShrinkerApplication.ORIGIN_SCHEMA_NAME;
+	private String originSchemas = MySqlShrinkerApplication.ORIGIN_SCHEMA_NAMES; // names or LIKE patterns, a multi-schema run when set
+	private String originUsername = MySqlShrinkerApplication.ORIGIN_USERNAME;
+	@ToString.Exclude
+	private String originPassword = MySqlShrinkerApplication.ORIGIN_PASSWORD;
+
+	private String destinationUrl = MySqlShrinkerApplication.DESTINATION_SCHEMA_URL;
+	private String destinationSchema = MySqlShrinkerApplication.DESTINATION_SCHEMA_NAME;
+	private String destinationUsername = MySqlShrinkerApplication.DESTINATION_USERNAME;
+	@ToString.Exclude
+	private String destinationPassword = MySqlShrinkerApplication.DESTINATION_PASSWORD;
+	private String destinationFanOutUrls = MySqlShrinkerApplication.DESTINATION_FAN_OUT_URLS; // same schema and credentials on every server
+
+	private RunMode runMode = MySqlShrinkerApplication.RUN_MODE;
+	private boolean dryRun; // clone and dump runs only print their plan, diff runs their statements
+
+	private boolean copyData = MySqlShrinkerApplication.COPY_DATA;
+	private boolean shrinkData = MySqlShrinkerApplication.SHRINK_DATA; // wins over copyData
+	private boolean deferIndices = MySqlShrinkerApplication.DEFER_INDICES;
+	private boolean exactCounts = MySqlShrinkerApplication.EXACT_COUNTS;
+	private WriteMode copyWriteMode = MySqlShrinkerApplication.COPY_WRITE_MODE;
+	private String rulesFile = MySqlShrinkerApplication.RULES_FILE;
+	private String dumpDirectory = MySqlShrinkerApplication.DUMP_DIRECTORY;
+	private DumpFormat dumpFormat = MySqlShrinkerApplication.DUMP_FORMAT;
+
+	public static Settings load(String... args) {
+		Properties properties = new Properties();
+		Properties arguments = parseArguments(args);
+		Path configFile = Paths.get(arguments.getProperty(CONFIG_ARGUMENT, DEFAULT_CONFIG_FILE));
+		if (Files.exists(configFile)) {
+			try (Reader reader = Files.newBufferedReader(configFile, StandardCharsets.UTF_8)) {
+				properties.load(reader);
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not read config file " + configFile.toAbsolutePath(), e);
+			}
+			log.info("Loaded settings from {}", configFile.toAbsolutePath());
+		} else if (arguments.containsKey(CONFIG_ARGUMENT)) {
+			throw new IllegalStateException("Config file " + configFile.toAbsolutePath() + " not found");
+		}
+		properties.putAll(arguments);
+
+		Settings settings = new Settings();
+		settings.originUrl = properties.getProperty("origin.url", settings.originUrl);
+		settings.originSchema = properties.getProperty("origin.schema", settings.originSchema);
+		settings.originSchemas = properties.getProperty("origin.schemas", settings.originSchemas);
+		settings.originUsername = properties.getProperty("origin.username", settings.originUsername);
+		settings.originPassword = properties.getProperty("origin.password", settings.originPassword);
+		settings.destinationUrl = properties.getProperty("destination.url", settings.destinationUrl);
+		settings.destinationSchema = properties.getProperty("destination.schema", settings.destinationSchema);
+		settings.destinationUsername = properties.getProperty("destination.username", settings.destinationUsername);
+		settings.destinationPassword = properties.getProperty("destination.password", settings.destinationPassword);
+		settings.destinationFanOutUrls = properties.getProperty("destination.fan-out-urls", settings.destinationFanOutUrls);
+		settings.runMode = RunMode.valueOf(properties.getProperty("run.mode", settings.runMode.name()).toUpperCase());
+		settings.dryRun = Boolean.parseBoolean(properties.getProperty("run.dry-run", String.valueOf(settings.dryRun)));
+		settings.copyData = Boolean.parseBoolean(properties.getProperty("copy.data", String.valueOf(settings.copyData)));
+		settings.shrinkData = Boolean.parseBoolean(properties.getProperty("copy.shrink", String.valueOf(settings.shrinkData)));
+		settings.deferIndices = Boolean.parseBoolean(properties.getProperty("copy.defer-indices", String.valueOf(settings.deferIndices)));
+		settings.exactCounts = Boolean.parseBoolean(properties.getProperty("copy.exact-counts", String.valueOf(settings.exactCounts)));
+		settings.copyWriteMode = WriteMode.valueOf(properties.getProperty("copy.write-mode", settings.copyWriteMode.name()).toUpperCase());
+		settings.rulesFile = properties.getProperty("rules.file", settings.rulesFile);
+		settings.dumpDirectory = properties.getProperty("dump.directory", settings.dumpDirectory);
+		settings.dumpFormat = DumpFormat.valueOf(properties.getProperty("dump.format", settings.dumpFormat.name()).toUpperCase());
+		return settings;
+	}
+
+	public boolean isMultiSchema() {
+		return originSchemas != null && !originSchemas.trim().isEmpty();
+	}
+
+	/**
+	 * @return the settings of one schema of a multi-schema run
+	 */
+	public Settings forSchema(String originSchema, String destinationSchema) {
+		Settings settings = new Settings();
+		settings.originUrl = originUrl;
+		settings.originSchema = originSchema;
+		settings.originSchemas = Keyword.EMPTY_STR;
+		settings.originUsername = originUsername;
+		settings.originPassword = originPassword;
+		settings.destinationUrl = destinationUrl;
+		settings.destinationSchema = destinationSchema;
+		settings.destinationUsername = destinationUsername;
+		settings.destinationPassword = destinationPassword;
+		settings.runMode = runMode;
+		settings.dryRun = dryRun;
+		settings.copyData = copyData;
+		settings.shrinkData = shrinkData;
+		settings.deferIndices = deferIndices;
+		settings.exactCounts = exactCounts;
+		settings.copyWriteMode = copyWriteMode;
+		settings.rulesFile = rulesFile;
+		settings.dumpDirectory = dumpDirectory;
+		settings.dumpFormat = dumpFormat;
+		return settings;
+	}
+
+	/**
+	 * Picks up every --key=value argument, anything else is left to the caller.
+	 */
+	private static Properties parseArguments(String... args) {
+		Properties arguments = new Properties();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (arg.startsWith("--") && separator > 2) {
+				arguments.setProperty(arg.substring(2, separator), arg.substring(separator + 1));
+			}
+		}
+		return arguments;
+	}
+
+}
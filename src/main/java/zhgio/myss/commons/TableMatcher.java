@@ -0,0 +1,74 @@
+package zhgio.myss.commons;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Table name patterns compiled once: plain names go into a hash set, globs (* and ?) and regex: patterns into a single
+ * alternation, so matching a name takes a set lookup and at most one regex run however many patterns there are.
+ * Names are matched case sensitively, as MySQL does on Linux.
+ */
+public final class TableMatcher {
+
+	private static final String REGEX_PREFIX = "regex:";
+
+	private final Set<String> names;
+	private final Pattern pattern; // null without globs and regexes
+
+	private TableMatcher(Set<String> names, Pattern pattern) {
+		this.names = names;
+		this.pattern = pattern;
+	}
+
+	/**
+	 * @param patterns - comma separated, like audit_*,log_????,regex:tmp_[0-9]+,users
+	 */
+	public static TableMatcher compile(String patterns) {
+		Set<String> names = new HashSet<>();
+		List<String> regexes = new ArrayList<>();
+		for (String part : patterns.split(",")) {
+			String trimmed = part.trim();
+			if (trimmed.startsWith(REGEX_PREFIX)) {
+				regexes.add(trimmed.substring(REGEX_PREFIX.length()));
+			} else if (trimmed.contains("*") || trimmed.contains("?")) {
+				regexes.add(globToRegex(trimmed));
+			} else if (!trimmed.isEmpty()) {
+				names.add(trimmed);
+			}
+		}
+		Pattern pattern = regexes.isEmpty() ? null : Pattern.compile("(?:" + String.join(")|(?:", regexes) + ")");
+		return new TableMatcher(names, pattern);
+	}
+
+	public boolean matches(String tableName) {
+		return names.contains(tableName) || pattern != null && pattern.matcher(tableName).matches();
+	}
+
+	public boolean isEmpty() {
+		return names.isEmpty() && pattern == null;
+	}
+
+	private static String globToRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (char c : glob.toCharArray()) {
+			if (c == '*' || c == '?') {
+				if (literal.length() > 0) {
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(c == '*' ? ".*" : ".");
+			} else {
+				literal.append(c);
+			}
+		}
+		if (literal.length() > 0) {
+			regex.append(Pattern.quote(literal.toString()));
+		}
+		return regex.toString();
+	}
+
+}
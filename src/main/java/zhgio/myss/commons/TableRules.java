@@ -0,0 +1,233 @@
+package zhgio.myss.commons;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.contracts.SamplingStrategy;
+import zhgio.myss.elements.KeyBlockSampling;
+import zhgio.myss.elements.KeyProbeSampling;
+import zhgio.myss.elements.RecentRowsSampling;
+import zhgio.myss.elements.Table;
+import zhgio.myss.elements.TableRule;
+
+/**
+ * Table selection and per-table rules read from a properties file with entries like
+ * <pre>
+ * tables.include=*
+ * tables.exclude=audit_*,regex:.*_log(_[0-9]+)?
+ * tables.structure-only=event_queue,tmp_*
+ * table.orders.where=created_at &gt;= '2018-01-01'
+ * table.orders.limit=10000
+ * table.orders.watermark=modified_at
+ * table.orders.sample=probes:1%
+ * table.history_*.limit=1000
+ * table.sessions.structure-only=true
+ * </pre>
+ * Selection patterns are names, globs or regex: patterns, see {@link TableMatcher}. A table is selected when it matches
+ * the includes, or there are none, and no exclude. Tables not selected are dropped before any introspection, they cost
+ * no metadata round trips. Per-table rules may name a glob, a rule for the exact name wins over the globs and the most
+ * specific glob, the one with the most literal characters, wins over the others. Foreign keys of selected tables
+ * referencing a table left out are dropped, the destination could not create them. Seeds of a subset are only taken from rules of exact names.
+ * Samples are read through the integer primary key: probes:amount[:rows per probe] takes random key ranges,
+ * blocks:amount[:rows per block] every Nth block of keys and recent:amount the newest rows by key. The amount is
+ * either a percentage of the approximate row count or a number of rows.
+ */
+@Slf4j
+public class TableRules {
+
+	private static final String TABLE_PREFIX = "table.";
+	private static final String INCLUDE = "tables.include";
+	private static final String EXCLUDE = "tables.exclude";
+	private static final String STRUCTURE_ONLY = "tables.structure-only";
+	// the glob with more literal characters names fewer tables, it comes first
+	private static final Comparator<String> GLOB_SPECIFICITY = Comparator.comparingInt((String glob) -> glob.replaceAll("[*?]", Keyword.EMPTY_STR).length()).reversed()
+			.thenComparing(Comparator.naturalOrder());
+	private static final long DEFAULT_PROBE_ROWS = 1000;
+	private static final long DEFAULT_BLOCK_ROWS = 10_000;
+
+	private final Map<String, TableRule> rules = new LinkedHashMap<>();
+	private final Map<String, TableRule> globRules = new TreeMap<>(GLOB_SPECIFICITY);
+	private final List<TableMatcher> globMatchers = new ArrayList<>(); // in the order of globRules
+	private TableMatcher includes = TableMatcher.compile(Keyword.EMPTY_STR);
+	private TableMatcher excludes = TableMatcher.compile(Keyword.EMPTY_STR);
+	private TableMatcher structureOnly = TableMatcher.compile(Keyword.EMPTY_STR);
+
+	private TableRules() {
+	}
+
+	/**
+	 * @return rules selecting every table and applying to none
+	 */
+	public static TableRules none() {
+		return new TableRules();
+	}
+
+	public static TableRules load(String fileName) {
+		TableRules tableRules = new TableRules();
+		Path path = Paths.get(fileName);
+		if (!Files.exists(path)) {
+			log.warn("Rules file {} not found, running without table rules", path.toAbsolutePath());
+			return tableRules;
+		}
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read rules file " + path.toAbsolutePath(), e);
+		}
+		tableRules.includes = TableMatcher.compile(properties.getProperty(INCLUDE, Keyword.EMPTY_STR));
+		tableRules.excludes = TableMatcher.compile(properties.getProperty(EXCLUDE, Keyword.EMPTY_STR));
+		tableRules.structureOnly = TableMatcher.compile(properties.getProperty(STRUCTURE_ONLY, Keyword.EMPTY_STR));
+		properties.stringPropertyNames().stream().filter(key -> key.startsWith(TABLE_PREFIX)).sorted().forEach(key -> tableRules.addRule(key, properties.getProperty(key).trim()));
+		tableRules.globRules.keySet().forEach(glob -> tableRules.globMatchers.add(TableMatcher.compile(glob)));
+		log.info("Loaded rules for {} tables and {} table globs from {}", tableRules.rules.size(), tableRules.globRules.size(), path.toAbsolutePath());
+		return tableRules;
+	}
+
+	/**
+	 * @throws IllegalStateException if the key names no table or no attribute
+	 */
+	private void addRule(String key, String value) {
+		int attributeSeparator = key.lastIndexOf('.');
+		if (attributeSeparator <= TABLE_PREFIX.length() || attributeSeparator == key.length() - 1) {
+			throw new IllegalStateException("Rule " + key + "=" + value + " needs a table and an attribute, like table.orders.limit");
+		}
+		String tableName = key.substring(TABLE_PREFIX.length(), attributeSeparator);
+		String attribute = key.substring(attributeSeparator + 1);
+		TableRule rule = (isGlob(tableName) ? globRules : rules).computeIfAbsent(tableName, TableRule::new);
+		switch (attribute) {
+		case "where":
+			rule.setWhere(value);
+			break;
+		case "limit":
+			rule.setRowLimit(Long.parseLong(value));
+			break;
+		case "watermark":
+			rule.setWatermarkColumn(value);
+			break;
+		case "sample":
+			rule.setSampling(parseSampling(key, value));
+			break;
+		case "structure-only":
+			rule.setStructureOnly(Boolean.parseBoolean(value));
+			break;
+		default:
+			log.warn("Ignoring unknown rule {}", key);
+		}
+	}
+
+	private SamplingStrategy parseSampling(String key, String value) {
+		String[] parts = value.split(":");
+		if (parts.length < 2) {
+			throw new IllegalStateException("Rule " + key + " needs a strategy and an amount, like probes:1%");
+		}
+		double fraction = parts[1].endsWith("%") ? Double.parseDouble(parts[1].substring(0, parts[1].length() - 1)) / 100 : 0;
+		long rows = fraction > 0 ? 0 : Long.parseLong(parts[1]);
+		switch (parts[0]) {
+		case "probes":
+			return new KeyProbeSampling(fraction, rows, parts.length > 2 ? Long.parseLong(parts[2]) : DEFAULT_PROBE_ROWS);
+		case "blocks":
+			return new KeyBlockSampling(fraction, rows, parts.length > 2 ? Long.parseLong(parts[2]) : DEFAULT_BLOCK_ROWS);
+		case "recent":
+			return new RecentRowsSampling(fraction, rows);
+		default:
+			throw new IllegalStateException("Unknown sampling strategy " + parts[0] + " in rule " + key);
+		}
+	}
+
+	/**
+	 * @return the rule for the exact name, else the most specific matching glob rule, else null
+	 */
+	public TableRule getRule(String tableName) {
+		TableRule rule = rules.get(tableName);
+		if (rule != null || globMatchers.isEmpty()) {
+			return rule;
+		}
+		Iterator<TableRule> globRule = globRules.values().iterator();
+		for (TableMatcher globMatcher : globMatchers) {
+			TableRule candidate = globRule.next();
+			if (globMatcher.matches(tableName)) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return whether the table is part of the run at all
+	 */
+	public boolean isSelected(String tableName) {
+		return (includes.isEmpty() || includes.matches(tableName)) && !excludes.matches(tableName);
+	}
+
+	/**
+	 * @return whether the table is created without copying its rows
+	 */
+	public boolean isStructureOnly(String tableName) {
+		if (structureOnly.matches(tableName)) {
+			return true;
+		}
+		TableRule rule = getRule(tableName);
+		return rule != null && rule.isStructureOnly();
+	}
+
+	/**
+	 * Drops the foreign keys of the tables referencing a table left out of the run, with one warning for all of them.
+	 */
+	public void dropForeignKeysToUnselected(List<Table> tables) {
+		int dropped = 0;
+		for (Table table : tables) {
+			dropped += dropForeignKeysToUnselected(table);
+		}
+		if (dropped > 0) {
+			log.warn("Dropped {} foreign keys referencing tables left out by the table rules", dropped);
+		}
+	}
+
+	/**
+	 * @return the number of foreign keys of the table dropped because their parent table is left out of the run
+	 */
+	public int dropForeignKeysToUnselected(Table table) {
+		int before = table.getForeignKeys().size();
+		table.getForeignKeys().removeIf(fk -> !isSelected(fk.getTableName()));
+		return before - table.getForeignKeys().size();
+	}
+
+	private static boolean isGlob(String tableName) {
+		return tableName.contains("*") || tableName.contains("?");
+	}
+
+	/**
+	 * Structure-only tables seed nothing, their rows are still pulled in when a copied row references them, so the
+	 * subset stays referentially closed.
+	 * @return the rules picking a starting set of rows, the tables a subset is grown from
+	 */
+	public List<TableRule> getSeeds() {
+		List<TableRule> seeds = new ArrayList<>();
+		for (TableRule rule : rules.values()) {
+			if (rule.toSelectClause().isEmpty() && rule.getSampling() == null) {
+				continue;
+			}
+			if (isStructureOnly(rule.getTableName())) {
+				log.warn("Table {} is structure only, ignoring its seed rule", rule.getTableName());
+			} else {
+				seeds.add(rule);
+			}
+		}
+		return seeds;
+	}
+
+}
@@ -0,0 +1,7 @@
+package zhgio.myss.commons;
+
+public enum WriteMode {
+	INSERT, // batched multi-row INSERT statements
+	LOAD_DATA // LOAD DATA LOCAL INFILE fed from an in-memory buffer
+
+}
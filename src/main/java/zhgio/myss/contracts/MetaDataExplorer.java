@@ -27,4 +27,19 @@ public interface MetaDataExplorer {
 
 	Set<Index> getTableIndicesFromMetadata(Table table) throws SQLException;
 
+	/**
+	 * Loads tables together with their columns, details, keys, indices and sizes in a few set-based queries.
+	 */
+	List<Table> getAllTablesFromInformationSchema(String schemaName);
+
+	/**
+	 * @return a fingerprint of every table definition by table name, it changes whenever the definition does
+	 */
+	Map<String, String> getTableFingerprints(String schemaName);
+
+	/**
+	 * Updates the approximate row counts, data and index lengths and sizes of already loaded tables in a single query.
+	 */
+	void refreshTableStatistics(String schemaName, List<Table> tables);
+
 }
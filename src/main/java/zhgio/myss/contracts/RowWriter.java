@@ -0,0 +1,16 @@
+package zhgio.myss.contracts;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Receives the batches of one table's row stream, always from a single thread.
+ */
+public interface RowWriter extends AutoCloseable {
+
+	void write(List<Object[]> rows) throws SQLException;
+
+	@Override
+	void close() throws SQLException;
+
+}
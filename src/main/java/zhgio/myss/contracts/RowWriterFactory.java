@@ -0,0 +1,12 @@
+package zhgio.myss.contracts;
+
+import java.sql.SQLException;
+
+import zhgio.myss.elements.Table;
+
+@FunctionalInterface
+public interface RowWriterFactory {
+
+	RowWriter open(Table table) throws SQLException;
+
+}
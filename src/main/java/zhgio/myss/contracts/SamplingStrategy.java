@@ -0,0 +1,27 @@
+package zhgio.myss.contracts;
+
+import java.util.List;
+
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.KeyRange;
+import zhgio.myss.elements.Table;
+
+/**
+ * Picks a sample of a table's rows through its integer primary key, so only the sampled slice is read.
+ */
+public interface SamplingStrategy {
+
+	/**
+	 * @param keyColumn - the single column integer primary key of the table
+	 * @param bounds - the lowest and highest key of the table
+	 * @param where - condition every sampled row also has to meet, null for none
+	 * @return the clauses selecting the sample, each one read by its own statement
+	 */
+	List<String> toSelectClauses(Table table, Column keyColumn, KeyRange bounds, String where);
+
+	/**
+	 * @return the number of rows the sample aims at, out of the approximate row count of the table
+	 */
+	long getTargetRows(Table table);
+
+}
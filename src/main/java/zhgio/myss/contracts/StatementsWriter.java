@@ -1,9 +1,22 @@
 package zhgio.myss.contracts;
 
+import java.util.Collection;
+import java.util.Set;
+
+import zhgio.myss.elements.Index;
+import zhgio.myss.elements.Key;
 
 public interface StatementsWriter {
 
 	void writeCreateStatement();
 
+	void writeCreateStatement(Set<Key> inlineForeignKeys);
+
+	void writeCreateStatement(Set<Key> inlineForeignKeys, Collection<Index> indices);
+
 	void writeAlterTableAddFkConstraintsStatement();
+
+	void writeAlterTableAddFkConstraintsStatement(Set<Key> foreignKeys);
+
+	void writeAlterTableAddIndicesStatement(Collection<Index> indices);
 }
@@ -0,0 +1,302 @@
+package zhgio.myss.elements;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import zhgio.myss.commons.DataType;
+
+import static zhgio.myss.commons.Keyword.BACKTICK;
+import static zhgio.myss.commons.Keyword.COMMA;
+import static zhgio.myss.commons.Keyword.EMPTY_STR;
+import static zhgio.myss.commons.Keyword.SPACE;
+
+/**
+ * Writes the DDL of a table into one reusable buffer and hands it to a sink, so generating the statements of a big
+ * schema neither builds intermediate strings per column nor keeps every finished statement around.
+ * The output is byte for byte the one {@link Table} always produced, quirks included.
+ * Not thread safe, {@link #local()} gives every thread its own writer.
+ */
+public class DdlWriter {
+
+	private static final ThreadLocal<DdlWriter> LOCAL = ThreadLocal.withInitial(DdlWriter::new);
+
+	// type name written for every data type, bits and booleans become tinyint(1) and timestamps become datetime
+	private static final String[] TYPE_NAMES = new String[DataType.values().length];
+
+	static {
+		for (DataType type : DataType.values()) {
+			TYPE_NAMES[type.ordinal()] = type == DataType.BIT || type == DataType.BOOLEAN ? DataType.TINYINT.name() : type == DataType.TIMESTAMP ? DataType.DATETIME.name() : type.name();
+		}
+	}
+
+	private final StringBuilder buffer = new StringBuilder(4096);
+	private char[] chars = new char[4096];
+
+	public static DdlWriter local() {
+		return LOCAL.get();
+	}
+
+	public String createStatement(Table table) {
+		return buildCreateStatement(table, table.getIndices()).toString();
+	}
+
+	public String createStatement(Table table, Set<Key> inlineForeignKeys) {
+		return buildCreateStatement(table, inlineForeignKeys, table.getIndices()).toString();
+	}
+
+	/**
+	 * @param indices - the secondary indices created with the table, the others can be added later
+	 */
+	public String createStatement(Table table, Set<Key> inlineForeignKeys, Collection<Index> indices) {
+		return buildCreateStatement(table, inlineForeignKeys, indices).toString();
+	}
+
+	public String alterTableAddFkConstraintsStatement(Table table, Set<Key> foreignKeys) {
+		return buildAlterTableAddFkConstraintsStatement(table, foreignKeys).toString();
+	}
+
+	/**
+	 * One ALTER TABLE adding all the given indices, so the table is rebuilt once for all of them.
+	 */
+	public String alterTableAddIndicesStatement(Table table, Collection<Index> indices) {
+		StringBuilder sb = buffer;
+		sb.setLength(0);
+		sb.append("ALTER TABLE ").append(BACKTICK).append(table.getTableName()).append(BACKTICK);
+		for (Index index : indices) {
+			sb.append(" ADD ");
+			appendIndex(sb, index);
+			sb.append(COMMA);
+		}
+		sb.setLength(sb.length() - 1); // delete last comma
+		return sb.toString();
+	}
+
+	/**
+	 * One ALTER TABLE applying all the given clauses, see the definition methods below for building them.
+	 */
+	public String alterTableStatement(Table table, List<String> clauses) {
+		StringBuilder sb = buffer;
+		sb.setLength(0);
+		sb.append("ALTER TABLE ").append(BACKTICK).append(table.getTableName()).append(BACKTICK).append(SPACE);
+		for (int i = 0; i < clauses.size(); i++) {
+			sb.append(i == 0 ? EMPTY_STR : COMMA + SPACE).append(clauses.get(i));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the column as declared in a CREATE TABLE statement
+	 */
+	public String columnDefinition(Column column) {
+		StringBuilder sb = buffer;
+		sb.setLength(0);
+		appendColumn(sb, column);
+		removeDanglingComma(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the index as declared in a CREATE TABLE statement
+	 */
+	public String indexDefinition(Index index) {
+		StringBuilder sb = buffer;
+		sb.setLength(0);
+		appendIndex(sb, index);
+		return sb.toString();
+	}
+
+	/**
+	 * @param constraint - the keys of one constraint, one per column in the order of the constraint's columns
+	 * @return the foreign key constraint as declared in a CREATE TABLE statement
+	 */
+	public String foreignKeyDefinition(List<Key> constraint) {
+		StringBuilder sb = buffer;
+		sb.setLength(0);
+		sb.append("CONSTRAINT ").append(BACKTICK).append(constraint.get(0).getFkName()).append(BACKTICK).append(" FOREIGN KEY (");
+		for (Key fk : constraint) {
+			sb.append(BACKTICK).append(fk.getFkColumnName()).append(BACKTICK).append(COMMA);
+		}
+		sb.setLength(sb.length() - 1);
+		sb.append(") REFERENCES ").append(BACKTICK).append(constraint.get(0).getTableName()).append(BACKTICK).append(" (");
+		for (Key fk : constraint) {
+			sb.append(BACKTICK).append(fk.getColumnName()).append(BACKTICK).append(COMMA);
+		}
+		sb.setLength(sb.length() - 1);
+		return sb.append(")").toString();
+	}
+
+	/**
+	 * @return the type name written for the data type, bits and booleans become tinyint(1) and timestamps datetime
+	 */
+	public static String typeName(DataType type) {
+		return TYPE_NAMES[type.ordinal()];
+	}
+
+	public void writeCreateStatement(Table table, Set<Key> inlineForeignKeys, Appendable sink) throws IOException {
+		flushTo(buildCreateStatement(table, inlineForeignKeys, table.getIndices()), sink);
+	}
+
+	public void writeAlterTableAddFkConstraintsStatement(Table table, Set<Key> foreignKeys, Appendable sink) throws IOException {
+		flushTo(buildAlterTableAddFkConstraintsStatement(table, foreignKeys), sink);
+	}
+
+	private StringBuilder buildCreateStatement(Table table, Collection<Index> indices) {
+		StringBuilder sb = buffer;
+		sb.setLength(0);
+		sb.append("CREATE TABLE IF NOT EXISTS ").append(BACKTICK).append(table.getTableName()).append(BACKTICK).append(SPACE).append("(").append(SPACE);
+
+		for (Column column : table.getColumns()) {
+			appendColumn(sb, column);
+		}
+
+		if (table.getPrimaryKeys() != null && !table.getPrimaryKeys().isEmpty()) {
+			sb.append("PRIMARY KEY (");
+			for (Key primaryKey : table.getPrimaryKeys()) {
+				sb.append(BACKTICK).append(primaryKey.getColumnName()).append(BACKTICK).append(COMMA);
+			}
+			sb.setLength(sb.length() - 1); // delete last comma
+			sb.append(")");
+		}
+
+		if (!indices.isEmpty()) {
+			sb.append(COMMA).append(SPACE);
+			for (Index index : indices) {
+				appendIndex(sb, index);
+				sb.append(COMMA).append(SPACE);
+			}
+		}
+
+		removeDanglingComma(sb);
+		return sb.append(")");
+	}
+
+	private StringBuilder buildCreateStatement(Table table, Set<Key> inlineForeignKeys, Collection<Index> indices) {
+		StringBuilder sb = buildCreateStatement(table, indices);
+		if (inlineForeignKeys.isEmpty()) {
+			return sb;
+		}
+		sb.setLength(sb.length() - 1); // reopen the definitions list
+		for (Key fk : inlineForeignKeys) {
+			sb.append(COMMA).append(" CONSTRAINT ").append(BACKTICK).append(fk.getFkName()).append(BACKTICK).append(SPACE);
+			appendForeignKeyReference(sb, fk);
+		}
+		return sb.append(")");
+	}
+
+	private StringBuilder buildAlterTableAddFkConstraintsStatement(Table table, Set<Key> foreignKeys) {
+		StringBuilder sb = buffer;
+		sb.setLength(0);
+		sb.append("ALTER TABLE ").append(table.getTableName());
+		for (Key fk : foreignKeys) {
+			sb.append(" ADD CONSTRAINT ").append(BACKTICK).append(fk.getFkName()).append(BACKTICK).append(SPACE);
+			appendForeignKeyReference(sb, fk);
+			sb.append(SPACE).append(COMMA);
+		}
+		sb.setLength(sb.length() - 1); // delete last comma
+		return sb;
+	}
+
+	private void appendColumn(StringBuilder sb, Column column) {
+		boolean bitOrBoolean = column.isBitOrBoolean();
+		sb.append(BACKTICK).append(column.getColumnName()).append(BACKTICK).append(SPACE).append(TYPE_NAMES[column.getType().ordinal()]);
+		if (bitOrBoolean) {
+			sb.append("(1) ");
+		} else {
+			appendColumnDetails(sb, column);
+		}
+		sb.append(column.isUnsigned() ? " unsigned " : SPACE);
+		if (!column.isNullable()) {
+			sb.append("NOT NULL ");
+		}
+		if (column.isDefaultable()) {
+			sb.append(" DEFAULT ").append(column.getDefaultValue());
+		} else if (column.isNullable()) {
+			sb.append(" DEFAULT NULL ");
+		}
+		if (column.isAutoincrement()) {
+			sb.append("AUTO_INCREMENT");
+		}
+		if (column.getExtra() != null && !column.getExtra().isEmpty()) {
+			sb.append(SPACE).append(column.getExtra());
+		}
+		sb.append(COMMA).append(SPACE);
+	}
+
+	/**
+	 * Same output as {@link Column#appendColumnDetails()} without building a string for every column.
+	 */
+	private void appendColumnDetails(StringBuilder sb, Column column) {
+		DataType type = column.getType();
+		int columnSize = column.getColumnSize();
+		if (DataType.DECIMAL == type) {
+			int decimalDigits = column.getDecimalDigits();
+			sb.append("(");
+			if (columnSize != 0) {
+				sb.append(columnSize);
+			}
+			sb.append(",");
+			if (decimalDigits != 0) {
+				sb.append(decimalDigits);
+			}
+			sb.append(")");
+		} else if (DataType.ENUM == type && !column.getEnums().isEmpty()) {
+			sb.append("(");
+			for (int i = 0; i < column.getEnums().size(); i++) {
+				sb.append(i == 0 ? EMPTY_STR : COMMA).append(column.getEnums().get(i));
+			}
+			sb.append(")");
+		} else if (DataType.TIMESTAMP != type && DataType.DATE != type && DataType.TIME != type && columnSize != 0) {
+			sb.append("(").append(columnSize).append(")");
+		}
+	}
+
+	private void appendIndex(StringBuilder sb, Index index) {
+		sb.append("KEY ").append(BACKTICK).append(index.getIndexName()).append(BACKTICK).append(SPACE).append("(");
+		Iterator<String> columnReferences = index.getColumnReferences().iterator();
+		sb.append(BACKTICK).append(columnReferences.next()).append(BACKTICK);
+		while (columnReferences.hasNext()) {
+			sb.append(COMMA).append(BACKTICK).append(columnReferences.next()).append(BACKTICK);
+		}
+		sb.append(")");
+	}
+
+	private void appendForeignKeyReference(StringBuilder sb, Key fk) {
+		sb.append("FOREIGN KEY (").append(BACKTICK).append(fk.getFkColumnName()).append(BACKTICK).append(")");
+		sb.append(" REFERENCES ").append(BACKTICK).append(fk.getTableName()).append(BACKTICK);
+		sb.append(" (").append(BACKTICK).append(fk.getColumnName()).append(BACKTICK).append(")");
+	}
+
+	/**
+	 * Trims the end of the statement and drops a trailing comma, in place.
+	 */
+	private void removeDanglingComma(StringBuilder sb) {
+		int length = sb.length();
+		while (length > 0 && sb.charAt(length - 1) <= ' ') {
+			length--;
+		}
+		sb.setLength(length);
+		if (length > 0 && sb.charAt(length - 1) == ',') {
+			sb.setLength(length - 1);
+		}
+	}
+
+	/**
+	 * Writers get the buffer's chars directly, Writer#append(CharSequence) would copy it into a string first.
+	 */
+	private void flushTo(StringBuilder sb, Appendable sink) throws IOException {
+		if (sink instanceof Writer) {
+			if (chars.length < sb.length()) {
+				chars = new char[Math.max(sb.length(), chars.length * 2)];
+			}
+			sb.getChars(0, sb.length(), chars, 0);
+			((Writer) sink).write(chars, 0, sb.length());
+		} else {
+			sink.append(sb);
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+package zhgio.myss.elements;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A slice of a table's rows, gzip compressed LOAD DATA text or a columnar row group depending on the dump format.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DumpChunk {
+
+	private String file;
+	private long rows;
+	private long compressedBytes; // size of the file, columnar row groups are not compressed
+
+}
@@ -0,0 +1,20 @@
+package zhgio.myss.elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+import zhgio.myss.commons.DumpFormat;
+
+/**
+ * Table of contents of a dump directory, everything a restore needs to know.
+ */
+@Data
+public class DumpManifest {
+
+	private String schemaName;
+	private long createdAt;
+	private DumpFormat format = DumpFormat.TSV; // dumps written before the columnar format have no format
+	private List<DumpedTable> tables = new ArrayList<>();
+
+}
@@ -0,0 +1,20 @@
+package zhgio.myss.elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Files of one table in a dump, paths are relative to the dump directory.
+ */
+@Data
+public class DumpedTable {
+
+	private String tableName;
+	private String createFile;
+	private String constraintsFile; // null when the table has no foreign keys
+	private List<String> columns = new ArrayList<>(); // column order of the data chunks
+	private List<DumpChunk> chunks = new ArrayList<>();
+
+}
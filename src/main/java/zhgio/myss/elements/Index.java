@@ -8,10 +8,11 @@ import lombok.ToString;
 
 @Data
 @AllArgsConstructor
-@ToString(exclude = { "tableName", "isAscending" })
+@ToString(exclude = { "tableName", "isAscending", "unique" })
 public class Index {
 	private String tableName;
 	private String indexName;
 	private LinkedHashSet<String> columnReferences; // needs to preserve the insertion order so we can identify ordinal position of every column reference
 	private boolean isAscending;
+	private boolean unique;
 }
\ No newline at end of file
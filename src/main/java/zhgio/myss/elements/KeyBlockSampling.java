@@ -0,0 +1,32 @@
+package zhgio.myss.elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every Nth block of the key space, blocks of about blockRows rows, so the sample is spread evenly over the table.
+ */
+public class KeyBlockSampling extends KeyRangeSampling {
+
+	private final long blockRows;
+
+	public KeyBlockSampling(double fraction, long rows, long blockRows) {
+		super(fraction, rows);
+		this.blockRows = blockRows;
+	}
+
+	@Override
+	protected List<KeyRange> pickRanges(KeyRange bounds, long targetRows, double keysPerRow) {
+		long span = keySpan(blockRows, keysPerRow);
+		long blocks = Math.max(1, (bounds.getUpperBound() - bounds.getLowerBound()) / span + 1);
+		long sampledBlocks = Math.max(1, (targetRows + blockRows - 1) / blockRows);
+		long step = Math.max(1, blocks / sampledBlocks);
+		List<KeyRange> ranges = new ArrayList<>();
+		for (long block = 0; block < blocks && ranges.size() < sampledBlocks; block += step) {
+			long start = bounds.getLowerBound() + block * span;
+			ranges.add(new KeyRange(start, Math.min(bounds.getUpperBound(), start + span - 1)));
+		}
+		return ranges;
+	}
+
+}
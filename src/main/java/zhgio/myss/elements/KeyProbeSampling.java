@@ -0,0 +1,44 @@
+package zhgio.myss.elements;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Random probes into the key space, each one reading a short contiguous run of rows. Probe starts come from a
+ * generator seeded by the key bounds, so repeated runs over the same keys sample the same rows.
+ */
+public class KeyProbeSampling extends KeyRangeSampling {
+
+	private final long probeRows;
+
+	public KeyProbeSampling(double fraction, long rows, long probeRows) {
+		super(fraction, rows);
+		this.probeRows = probeRows;
+	}
+
+	@Override
+	protected List<KeyRange> pickRanges(KeyRange bounds, long targetRows, double keysPerRow) {
+		long span = keySpan(probeRows, keysPerRow);
+		long width = bounds.getUpperBound() - bounds.getLowerBound() + 1;
+		long probes = (targetRows + probeRows - 1) / probeRows;
+		Random random = new Random(bounds.getLowerBound() * 31 + bounds.getUpperBound());
+		TreeSet<Long> starts = new TreeSet<>();
+		for (long i = 0; i < probes && starts.size() < width / span + 1; i++) {
+			starts.add(bounds.getLowerBound() + (long) (random.nextDouble() * Math.max(1, width - span + 1)));
+		}
+		List<KeyRange> ranges = new ArrayList<>();
+		for (long start : starts) {
+			long end = Math.min(bounds.getUpperBound(), start + span - 1);
+			KeyRange last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+			if (last != null && start <= last.getUpperBound() + 1) {
+				last.setUpperBound(Math.max(last.getUpperBound(), end)); // overlapping probes merge into one range
+			} else {
+				ranges.add(new KeyRange(start, end));
+			}
+		}
+		return ranges;
+	}
+
+}
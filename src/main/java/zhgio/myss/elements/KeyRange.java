@@ -0,0 +1,53 @@
+package zhgio.myss.elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import static zhgio.myss.commons.Keyword.BACKTICK;
+
+/**
+ * Inclusive range of integer primary key values, the unit of work when a table is copied in chunks.
+ */
+@Data
+@AllArgsConstructor
+public class KeyRange {
+
+	private long lowerBound;
+	private long upperBound;
+
+	/**
+	 * Splits [min, max] into ranges of equal width, at most the given number of them.
+	 */
+	public static List<KeyRange> split(long min, long max, long chunks) {
+		List<KeyRange> ranges = new ArrayList<>();
+		long width = Math.max(1, (long) Math.ceil(((double) max - min + 1) / chunks));
+		for (long lower = min; lower <= max; lower += width) {
+			long upper = max - lower < width ? max : lower + width - 1;
+			ranges.add(new KeyRange(lower, upper));
+			if (upper == max) {
+				break;
+			}
+		}
+		return ranges;
+	}
+
+	/**
+	 * @return the clause selecting the rows of this range in key order
+	 */
+	public String toSelectClause(String keyColumnName) {
+		String column = BACKTICK + keyColumnName + BACKTICK;
+		return "WHERE " + column + " >= " + lowerBound + " AND " + column + " <= " + upperBound + " ORDER BY " + column;
+	}
+
+	/**
+	 * @param where - a further condition on the rows of this range, from the table rules
+	 */
+	public String toSelectClause(String keyColumnName, String where) {
+		String column = BACKTICK + keyColumnName + BACKTICK;
+		return "WHERE " + column + " >= " + lowerBound + " AND " + column + " <= " + upperBound + " AND (" + where + ") ORDER BY " + column;
+	}
+
+}
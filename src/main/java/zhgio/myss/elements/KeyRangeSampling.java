@@ -0,0 +1,60 @@
+package zhgio.myss.elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static zhgio.myss.commons.Keyword.BACKTICK;
+
+/**
+ * Base of the strategies sampling whole key ranges. The ranges are sized out of the approximate row count and the
+ * key bounds, assuming keys are spread evenly, and read as multi-range index scans of a bounded number of ranges each.
+ */
+public abstract class KeyRangeSampling extends SizedSampling {
+
+	private static final int RANGES_PER_STATEMENT = 100;
+
+	protected KeyRangeSampling(double fraction, long rows) {
+		super(fraction, rows);
+	}
+
+	/**
+	 * @param keysPerRow - average width of the key space taken by one row, at least 1
+	 * @return the non overlapping ranges to read, in key order
+	 */
+	protected abstract List<KeyRange> pickRanges(KeyRange bounds, long targetRows, double keysPerRow);
+
+	@Override
+	public List<String> toSelectClauses(Table table, Column keyColumn, KeyRange bounds, String where) {
+		long tableRows = Math.max(1, table.getNumberOfRowsApprox());
+		long targetRows = getTargetRows(table);
+		double keysPerRow = Math.max(1, ((double) bounds.getUpperBound() - bounds.getLowerBound() + 1) / tableRows);
+		List<KeyRange> ranges = pickRanges(bounds, Math.min(targetRows, tableRows), keysPerRow);
+
+		String column = BACKTICK + keyColumn.getColumnName() + BACKTICK;
+		List<String> clauses = new ArrayList<>();
+		StringBuilder sb = new StringBuilder();
+		for (int from = 0; from < ranges.size(); from += RANGES_PER_STATEMENT) {
+			sb.setLength(0);
+			sb.append("WHERE ");
+			if (where != null && !where.isEmpty()) {
+				sb.append("(").append(where).append(") AND ");
+			}
+			sb.append("(");
+			for (int i = from; i < Math.min(ranges.size(), from + RANGES_PER_STATEMENT); i++) {
+				KeyRange range = ranges.get(i);
+				sb.append(i > from ? " OR " : "").append(column).append(" BETWEEN ").append(range.getLowerBound()).append(" AND ").append(range.getUpperBound());
+			}
+			sb.append(") ORDER BY ").append(column);
+			clauses.add(sb.toString());
+		}
+		return clauses;
+	}
+
+	/**
+	 * @return the number of keys a range of the given number of rows spans
+	 */
+	protected static long keySpan(long rows, double keysPerRow) {
+		return Math.max(1, (long) Math.ceil(rows * keysPerRow));
+	}
+
+}
@@ -0,0 +1,24 @@
+package zhgio.myss.elements;
+
+import java.util.Collections;
+import java.util.List;
+
+import static zhgio.myss.commons.Keyword.BACKTICK;
+
+/**
+ * The newest rows by auto increment key, read backwards from the end of the primary key index.
+ */
+public class RecentRowsSampling extends SizedSampling {
+
+	public RecentRowsSampling(double fraction, long rows) {
+		super(fraction, rows);
+	}
+
+	@Override
+	public List<String> toSelectClauses(Table table, Column keyColumn, KeyRange bounds, String where) {
+		long limit = getTargetRows(table);
+		String column = BACKTICK + keyColumn.getColumnName() + BACKTICK;
+		return Collections.singletonList((where == null || where.isEmpty() ? "" : "WHERE " + where + " ") + "ORDER BY " + column + " DESC LIMIT " + limit);
+	}
+
+}
@@ -0,0 +1,64 @@
+package zhgio.myss.elements;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Outcome of the planning phase: the tables in the order their copy is started, the estimated cost of each one and
+ * the work units every worker is expected to get. Costs are in bytes of copied data, per row overhead included.
+ */
+@Data
+@Slf4j
+public class RunPlan {
+
+	private static final double MB = 1024 * 1024;
+
+	private final int workers;
+	private final List<Table> tables = new ArrayList<>(); // largest estimated cost first
+	private final Map<String, Long> costs = new LinkedHashMap<>();
+	private final Map<String, Integer> units = new LinkedHashMap<>(); // chunks for split tables, 1 for single stream ones
+	private final List<List<String>> workerUnits = new ArrayList<>();
+	private final long[] workerLoads;
+
+	public RunPlan(int workers) {
+		this.workers = workers;
+		this.workerLoads = new long[workers];
+		for (int i = 0; i < workers; i++) {
+			workerUnits.add(new ArrayList<>());
+		}
+	}
+
+	public long getTotalCost() {
+		return Arrays.stream(workerLoads).sum();
+	}
+
+	/**
+	 * @return the estimated cost of the busiest worker, what the whole copy takes
+	 */
+	public long getMakespan() {
+		return Arrays.stream(workerLoads).max().orElse(0);
+	}
+
+	public void print() {
+		log.info("RUN PLAN: {} tables, {} work units over {} workers", tables.size(), units.values().stream().mapToInt(Integer::intValue).sum(), workers);
+		for (Table table : tables) {
+			log.info("table: {} | num of rows approx: {} | data: {} MB | indices: {} MB | cost: {} MB | units: {}", table.getTableName(), table.getNumberOfRowsApprox(),
+					mb(table.getDataLength()), mb(table.getIndexLength()), mb(costs.get(table.getTableName())), units.get(table.getTableName()));
+		}
+		for (int i = 0; i < workers; i++) {
+			log.info("worker {} | load: {} MB | {}", i, mb(workerLoads[i]), String.join(", ", workerUnits.get(i)));
+		}
+		log.info("Estimated cost {} MB, busiest worker {} MB, even split {} MB", mb(getTotalCost()), mb(getMakespan()), mb(getTotalCost() / Math.max(1, workers)));
+	}
+
+	private static String mb(long bytes) {
+		return String.format("%.2f", bytes / MB);
+	}
+
+}
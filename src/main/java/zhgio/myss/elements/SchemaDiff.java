@@ -0,0 +1,210 @@
+package zhgio.myss.elements;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.DataType;
+
+import static zhgio.myss.commons.Keyword.BACKTICK;
+import static zhgio.myss.commons.Keyword.EMPTY_STR;
+
+/**
+ * The DDL converging a destination schema to the origin one, out of the two table models. Statements come in three
+ * steps: changed foreign keys are dropped, then tables are created or altered with one ALTER TABLE each, then missing
+ * foreign keys are added once every referenced column and index exists.
+ * Columns, indices and tables found only in the destination are reported and left as they are, the diff never drops
+ * data. Integer display widths are ignored, MySQL 8 does not report them, and columns are compared by the type the DDL
+ * writes, so a bit cloned as tinyint(1) is no difference.
+ */
+@Data
+@Slf4j
+public class SchemaDiff {
+
+	private static final Set<DataType> INTEGER_TYPES = EnumSet.of(DataType.TINYINT, DataType.SMALLINT, DataType.INT, DataType.BIGINT);
+	private static final Set<DataType> SIZELESS_TYPES = EnumSet.of(DataType.DATE, DataType.TIME, DataType.TIMESTAMP, DataType.DATETIME, DataType.BIT, DataType.BOOLEAN);
+
+	private final List<String> dropConstraintStatements = new ArrayList<>();
+	private final List<String> structureStatements = new ArrayList<>();
+	private final List<String> addConstraintStatements = new ArrayList<>();
+	private final List<String> destinationOnly = new ArrayList<>(); // tables, columns and indices not in the origin
+	private int unchangedTables;
+
+	public static SchemaDiff compare(List<Table> originTables, List<Table> destinationTables) {
+		SchemaDiff diff = new SchemaDiff();
+		Map<String, Table> destinationByName = destinationTables.stream().collect(Collectors.toMap(Table::getTableName, Function.identity()));
+		for (Table origin : originTables) {
+			Table destination = destinationByName.remove(origin.getTableName());
+			if (destination == null) {
+				diff.structureStatements.add(DdlWriter.local().createStatement(origin));
+				diff.addConstraints(origin, byConstraint(origin.getForeignKeys()).values());
+			} else {
+				diff.compareTable(origin, destination);
+			}
+		}
+		destinationByName.keySet().forEach(tableName -> diff.destinationOnly.add("table " + tableName));
+		return diff;
+	}
+
+	public boolean isEmpty() {
+		return dropConstraintStatements.isEmpty() && structureStatements.isEmpty() && addConstraintStatements.isEmpty();
+	}
+
+	/**
+	 * @return every statement in the order it has to run
+	 */
+	public List<String> getStatements() {
+		List<String> statements = new ArrayList<>(dropConstraintStatements);
+		statements.addAll(structureStatements);
+		statements.addAll(addConstraintStatements);
+		return statements;
+	}
+
+	public void print() {
+		log.info("SCHEMA DIFF: {} statements, {} tables unchanged", getStatements().size(), unchangedTables);
+		getStatements().forEach(statement -> log.info("{};", statement));
+		destinationOnly.forEach(element -> log.info("Only in the destination, left as is: {}", element));
+	}
+
+	private void compareTable(Table origin, Table destination) {
+		List<String> clauses = new ArrayList<>();
+		compareColumns(origin, destination, clauses);
+		comparePrimaryKeys(origin, destination, clauses);
+		compareIndices(origin, destination, clauses);
+
+		Map<String, List<Key>> destinationKeys = byConstraint(destination.getForeignKeys());
+		List<List<Key>> addedKeys = new ArrayList<>();
+		List<String> droppedKeys = new ArrayList<>();
+		for (Map.Entry<String, List<Key>> constraint : byConstraint(origin.getForeignKeys()).entrySet()) {
+			List<Key> existing = destinationKeys.get(constraint.getKey());
+			if (existing == null) {
+				addedKeys.add(constraint.getValue());
+			} else if (!references(constraint.getValue()).equals(references(existing))) {
+				droppedKeys.add("DROP FOREIGN KEY " + BACKTICK + constraint.getKey() + BACKTICK);
+				addedKeys.add(constraint.getValue());
+			}
+		}
+
+		if (!droppedKeys.isEmpty()) {
+			dropConstraintStatements.add(DdlWriter.local().alterTableStatement(origin, droppedKeys));
+		}
+		if (!clauses.isEmpty()) {
+			structureStatements.add(DdlWriter.local().alterTableStatement(origin, clauses));
+		}
+		addConstraints(origin, addedKeys);
+		if (clauses.isEmpty() && addedKeys.isEmpty()) {
+			unchangedTables++;
+		}
+	}
+
+	private void compareColumns(Table origin, Table destination, List<String> clauses) {
+		Map<String, Column> destinationColumns = byName(destination.getColumns(), Column::getColumnName);
+		String previous = null;
+		for (Column column : origin.getColumns()) {
+			Column existing = destinationColumns.remove(column.getColumnName());
+			if (existing == null) {
+				clauses.add("ADD COLUMN " + DdlWriter.local().columnDefinition(column) + (previous == null ? " FIRST" : " AFTER " + BACKTICK + previous + BACKTICK));
+			} else if (!signature(column).equals(signature(existing))) {
+				clauses.add("MODIFY COLUMN " + DdlWriter.local().columnDefinition(column));
+			}
+			previous = column.getColumnName();
+		}
+		destinationColumns.keySet().forEach(columnName -> destinationOnly.add("column " + destination.getTableName() + "." + columnName));
+	}
+
+	private void comparePrimaryKeys(Table origin, Table destination, List<String> clauses) {
+		Set<String> originKey = columnNames(origin.getPrimaryKeys());
+		Set<String> destinationKey = columnNames(destination.getPrimaryKeys());
+		if (originKey.equals(destinationKey)) {
+			return;
+		}
+		if (!destinationKey.isEmpty()) {
+			clauses.add("DROP PRIMARY KEY");
+		}
+		if (!originKey.isEmpty()) {
+			clauses.add("ADD PRIMARY KEY (" + origin.getPrimaryKeys().stream().map(key -> BACKTICK + key.getColumnName() + BACKTICK).collect(Collectors.joining(",")) + ")");
+		}
+	}
+
+	private void compareIndices(Table origin, Table destination, List<String> clauses) {
+		Map<String, Index> destinationIndices = byName(destination.getIndices(), Index::getIndexName);
+		for (Index index : origin.getIndices()) {
+			Index existing = destinationIndices.remove(index.getIndexName());
+			if (existing != null && new ArrayList<>(existing.getColumnReferences()).equals(new ArrayList<>(index.getColumnReferences()))) {
+				continue;
+			}
+			if (existing != null) {
+				clauses.add("DROP INDEX " + BACKTICK + index.getIndexName() + BACKTICK);
+			}
+			clauses.add("ADD " + DdlWriter.local().indexDefinition(index));
+		}
+		// indices created by the server along with a foreign key constraint carry the constraint's name
+		Set<String> constraintNames = origin.getForeignKeys().stream().map(Key::getFkName).collect(Collectors.toSet());
+		destinationIndices.keySet().stream().filter(indexName -> !constraintNames.contains(indexName))
+				.forEach(indexName -> destinationOnly.add("index " + destination.getTableName() + "." + indexName));
+	}
+
+	private void addConstraints(Table table, Collection<List<Key>> constraints) {
+		if (constraints.isEmpty()) {
+			return;
+		}
+		List<String> clauses = constraints.stream().map(constraint -> "ADD " + DdlWriter.local().foreignKeyDefinition(constraint)).collect(Collectors.toList());
+		addConstraintStatements.add(DdlWriter.local().alterTableStatement(table, clauses));
+	}
+
+	/**
+	 * Everything of a column's definition that makes a difference to the server, in the form the DDL writes it.
+	 */
+	private static String signature(Column column) {
+		DataType type = column.getType();
+		String size = INTEGER_TYPES.contains(type) || SIZELESS_TYPES.contains(type) ? EMPTY_STR
+				: type == DataType.DECIMAL ? column.getColumnSize() + "," + column.getDecimalDigits()
+				: type == DataType.ENUM ? String.valueOf(column.getEnums()) : String.valueOf(column.getColumnSize());
+		return DdlWriter.typeName(type) + "(" + size + ")|" + column.isUnsigned() + "|" + column.isNullable() + "|"
+				+ (column.isDefaultable() ? column.getDefaultValue() : null) + "|" + column.isAutoincrement() + "|" + Objects.toString(column.getExtra(), EMPTY_STR).trim();
+	}
+
+	/**
+	 * A composite foreign key has a key per column, all named after the constraint.
+	 * @return the keys of every constraint by its name, in the order of the constraint's columns
+	 */
+	private static Map<String, List<Key>> byConstraint(Set<Key> foreignKeys) {
+		Map<String, List<Key>> byConstraint = new LinkedHashMap<>();
+		if (foreignKeys != null) {
+			foreignKeys.forEach(fk -> byConstraint.computeIfAbsent(fk.getFkName(), name -> new ArrayList<>()).add(fk));
+		}
+		return byConstraint;
+	}
+
+	/**
+	 * @return the column to column references of a constraint, in its column order
+	 */
+	private static List<String> references(List<Key> constraint) {
+		return constraint.stream().map(fk -> fk.getFkColumnName() + ">" + fk.getTableName() + "." + fk.getColumnName()).collect(Collectors.toList());
+	}
+
+	private static Set<String> columnNames(Set<Key> keys) {
+		return keys == null ? Collections.emptySet() : keys.stream().map(Key::getColumnName).collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	private static <T> Map<String, T> byName(Set<T> elements, Function<T, String> name) {
+		Map<String, T> byName = new HashMap<>();
+		if (elements != null) {
+			elements.forEach(element -> byName.put(name.apply(element), element));
+		}
+		return byName;
+	}
+
+}
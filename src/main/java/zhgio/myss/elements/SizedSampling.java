@@ -0,0 +1,27 @@
+package zhgio.myss.elements;
+
+import zhgio.myss.contracts.SamplingStrategy;
+
+/**
+ * Base of the strategies sampling either a part of the table or a number of rows.
+ */
+public abstract class SizedSampling implements SamplingStrategy {
+
+	private final double fraction;
+	private final long rows;
+
+	/**
+	 * @param fraction - part of the table to sample, used when above 0
+	 * @param rows - number of rows to sample otherwise
+	 */
+	protected SizedSampling(double fraction, long rows) {
+		this.fraction = fraction;
+		this.rows = rows;
+	}
+
+	@Override
+	public long getTargetRows(Table table) {
+		return fraction > 0 ? (long) Math.ceil(Math.max(1, table.getNumberOfRowsApprox()) * fraction) : rows;
+	}
+
+}
@@ -1,6 +1,7 @@
 package zhgio.myss.elements;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -15,13 +16,8 @@ import lombok.extern.slf4j.Slf4j;
 import zhgio.myss.commons.DataType;
 import zhgio.myss.contracts.StatementsWriter;
 
-import static zhgio.myss.commons.Keyword.BACKTICK;
-import static zhgio.myss.commons.Keyword.COMMA;
-import static zhgio.myss.commons.Keyword.EMPTY_STR;
-import static zhgio.myss.commons.Keyword.SPACE;
-
 @Data
-@ToString(exclude = { "schemaName", "columns", "numberOfRowsExact", "numberOfRowsApprox" })
+@ToString(exclude = { "schemaName", "columns", "numberOfRowsExact", "rowCountFresh", "numberOfRowsApprox" })
 @EqualsAndHashCode(exclude = "columns")
 @Slf4j
 public class Table implements StatementsWriter {
@@ -31,7 +27,10 @@ public class Table implements StatementsWriter {
 	private Set<Column> columns;
 	private BigDecimal tableSizeInMb;
 	private long numberOfRowsExact;
+	private boolean rowCountFresh; // the exact count was taken during this run, not reused from the count cache
 	private long numberOfRowsApprox; // exact can take a a while to count while approx is off by 10-20% but gives you a general idea of row count
+	private long dataLength; // bytes, as estimated by information_schema.TABLES
+	private long indexLength;
 
 	// table PK column name
 	private Set<Key> primaryKeys;
@@ -47,6 +46,24 @@ public class Table implements StatementsWriter {
 		this.tableName = tableName;
 	}
 
+	/**
+	 * @return the same definition in another schema of identical structure, with its own columns and without statistics.
+	 * Keys and indices are shared, nothing changes them once introspected.
+	 */
+	public Table copyFor(String schemaName) {
+		Table copy = new Table(schemaName, this.tableName);
+		Set<Column> copiedColumns = new LinkedHashSet<>();
+		for (Column column : this.columns) {
+			copiedColumns.add(new Column(copy, column.getColumnName(), column.getType(), column.getColumnSize(), column.isNullable(), column.isAutoincrement(),
+					column.isDefaultable(), column.getDefaultValue(), column.getDecimalDigits(), column.isUnsigned(), column.getEnums(), column.getExtra()));
+		}
+		copy.setColumns(copiedColumns);
+		copy.setPrimaryKeys(new LinkedHashSet<>(this.primaryKeys));
+		copy.setForeignKeys(new LinkedHashSet<>(this.foreignKeys));
+		copy.setIndices(new LinkedHashSet<>(this.indices));
+		return copy;
+	}
+
 	/**
 	 * sets columns size, decimal precision, signed/unsigned, Extra column
 	 * because this sort of data is missing in the databaseMetaData object or is inconsistent
@@ -64,66 +81,32 @@ public class Table implements StatementsWriter {
 	@Override
 	public void writeCreateStatement() {
 		log.info("Starting to write the CREATE TABLE statement for table {}", this.getTableName());
-		StringBuilder sb = new StringBuilder("CREATE TABLE IF NOT EXISTS ");
-		sb.append(BACKTICK).append(this.getTableName()).append(BACKTICK).append(SPACE).append("(").append(SPACE);
-
-		/*
-		 * appending columns
-		 */
-		//@formatter:off
-		this.getColumns().forEach(
-				column ->
-						sb.append(BACKTICK).append(column.getColumnName()).append(BACKTICK).append(SPACE)
-						.append(column.isBitOrBoolean() ? DataType.TINYINT : column.getType() == DataType.TIMESTAMP ? DataType.DATETIME : column.getType())
-						.append(column.isBitOrBoolean() ? "(1) ": column.appendColumnDetails()).append(column.isUnsigned() ? " unsigned " : SPACE)
-						.append(!column.isNullable() ? "NOT NULL " : EMPTY_STR)
-						.append(column.isDefaultable() ? " DEFAULT " + column.getDefaultValue() : column.isNullable() ? " DEFAULT NULL " : EMPTY_STR)
-						.append(column.isAutoincrement() ? "AUTO_INCREMENT" : EMPTY_STR)
-						.append(column.getExtra() != null && !column.getExtra().isEmpty() ? SPACE + column.getExtra() : EMPTY_STR)
-						.append(COMMA).append(SPACE)
-		);
-		//@formatter:on
-		log.debug("Appended columns");
-
-		/*
-		 * append primary key(s)
-		 */
-		if (this.getPrimaryKeys() != null && !this.getPrimaryKeys().isEmpty()) {
-			//@formatter:off
-				sb.append("PRIMARY KEY (");
-				this.getPrimaryKeys().forEach(
-						primaryKey ->
-									sb.append(BACKTICK).append(primaryKey.getColumnName()).append(BACKTICK).append(COMMA)
-
-				);
-				//@formatter:on
-			sb.deleteCharAt(sb.length() - 1).append(")"); // delete last comma
-		}
-		log.debug("Appended primary keys");
-
-		/*
-		 * appending indices
-		 */
-		if (!this.getIndices().isEmpty()) {
-			sb.append(COMMA).append(SPACE);
-			//@formatter:off
-			this.getIndices().forEach(
-				index ->
-						sb.append("KEY ").append(BACKTICK).append(index.getIndexName())
-						.append(BACKTICK).append(SPACE).append("(")
-						.append(listToString(index.getColumnReferences()))
-						.append(")").append(COMMA).append(SPACE)
-			);}
-			//@formatter:on
-		log.debug("Appended indices");
-
-		StringBuilder newSb; // have to reassign the string builder because forEach complains about mutability
-		newSb = findAndRemoveDanglingComma(sb);
-
-		newSb.append(")");
-		this.setSqlStatement(newSb.toString());
+		this.setSqlStatement(DdlWriter.local().createStatement(this));
 		log.info("Wrote the CREATE TABLE {} statement successfully", this.getTableName());
-		log.debug(newSb.toString());
+		log.debug(this.getSqlStatement());
+	}
+
+	/**
+	 * Same CREATE statement as {@link #writeCreateStatement()} with the given foreign key constraints declared inline,
+	 * used when the referenced tables are guaranteed to exist by the time this statement runs.
+	 */
+	@Override
+	public void writeCreateStatement(Set<Key> inlineForeignKeys) {
+		log.info("Starting to write the CREATE TABLE statement for table {}", this.getTableName());
+		this.setSqlStatement(DdlWriter.local().createStatement(this, inlineForeignKeys));
+		log.info("Wrote the CREATE TABLE {} statement successfully", this.getTableName());
+		log.debug("Inlined {} foreign key constraints for table {}", inlineForeignKeys.size(), this.getTableName());
+	}
+
+	/**
+	 * Same CREATE statement as {@link #writeCreateStatement(Set)} declaring only the given secondary indices.
+	 */
+	@Override
+	public void writeCreateStatement(Set<Key> inlineForeignKeys, Collection<Index> indices) {
+		log.info("Starting to write the CREATE TABLE statement for table {}", this.getTableName());
+		this.setSqlStatement(DdlWriter.local().createStatement(this, inlineForeignKeys, indices));
+		log.info("Wrote the CREATE TABLE {} statement successfully", this.getTableName());
+		log.debug("Declared {} of {} indices for table {}", indices.size(), this.getIndices().size(), this.getTableName());
 	}
 
 	/**
@@ -131,49 +114,57 @@ public class Table implements StatementsWriter {
 	 */
 	@Override
 	public void writeAlterTableAddFkConstraintsStatement() {
-		log.info("Writing the ALTER TABLE statement for table {}", this.getTableName());
+		this.writeAlterTableAddFkConstraintsStatement(this.getForeignKeys());
+	}
 
-		StringBuilder sb = new StringBuilder("ALTER TABLE ");
-		sb.append(this.getTableName());
-
-		//@formatter:off
-		this.getForeignKeys().forEach(
-			fk ->
-				 sb.append(" ADD CONSTRAINT ").append(BACKTICK)
-				 .append(fk.getFkName()).append(BACKTICK).append(SPACE)
-				 .append("FOREIGN KEY (").append(BACKTICK).append(fk.getFkColumnName()).append(BACKTICK).append(")")
-				 .append(" REFERENCES ").append(BACKTICK).append(fk.getTableName()).append(BACKTICK)
-				 .append(" (").append(BACKTICK).append(fk.getColumnName()).append(BACKTICK).append(") ").append(COMMA)
-		);
-		//@formatter:on
-		sb.deleteCharAt(sb.length() - 1); // delete last comma
+	/**
+	 * Builds an ALTER TABLE SQL statement binding only the given subset of #this table's foreign key constraints.
+	 */
+	@Override
+	public void writeAlterTableAddFkConstraintsStatement(Set<Key> foreignKeys) {
+		log.info("Writing the ALTER TABLE statement for table {}", this.getTableName());
+		this.setSqlStatement(DdlWriter.local().alterTableAddFkConstraintsStatement(this, foreignKeys));
 		log.info("Wrote the ALTER TABLE statement successfully");
-		this.setSqlStatement(sb.toString());
 	}
 
-	// helper methods
-	private String listToString(LinkedHashSet<String> columnReferences) {
-		StringBuilder resultBuilder = new StringBuilder();
-		columnReferences.forEach(colRef -> resultBuilder.append(BACKTICK).append(colRef).append(BACKTICK).append(COMMA));
-		resultBuilder.deleteCharAt(resultBuilder.length() - 1);
-		return resultBuilder.toString();
+	/**
+	 * Builds a single ALTER TABLE SQL statement adding all the given secondary indices to #this table.
+	 */
+	@Override
+	public void writeAlterTableAddIndicesStatement(Collection<Index> indices) {
+		log.info("Writing the ALTER TABLE ADD INDEX statement for table {}", this.getTableName());
+		this.setSqlStatement(DdlWriter.local().alterTableAddIndicesStatement(this, indices));
+		log.info("Wrote the ALTER TABLE ADD INDEX statement successfully");
 	}
 
 	/**
-	 * deletes some possible dangling commas in the string builder
-	 * @param sb - query string builder
+	 * @return the secondary indices that can be built after the data is loaded: all of them except the ones led by a
+	 * foreign key column, those back a constraint and the server would create them along with it anyway
 	 */
-	private StringBuilder findAndRemoveDanglingComma(StringBuilder sb) {
-		// check if comma is the last character
-		// have to reassign the sb because trimming can only be called on string objects
-		StringBuilder newSb = new StringBuilder(sb.toString().trim());
-		char lastChar = newSb.charAt(newSb.length() - 1);
-		if (String.valueOf(lastChar).equals(COMMA)) {
-			return newSb.deleteCharAt(newSb.length() - 1);
+	public Set<Index> getDeferrableIndices() {
+		Set<String> foreignKeyColumns = this.getForeignKeys().stream().map(Key::getFkColumnName).collect(Collectors.toSet());
+		return this.getIndices().stream().filter(index -> !foreignKeyColumns.contains(index.getColumnReferences().iterator().next()))
+				.collect(Collectors.toCollection(LinkedHashSet::new));
+	}
+
+	/**
+	 * @return the primary key column if the table has a single column integer primary key, null otherwise
+	 */
+	public Column getIntegerPrimaryKeyColumn() {
+		if (this.getPrimaryKeys() == null || this.getPrimaryKeys().size() != 1) {
+			return null;
 		}
-		return newSb;
+		String keyColumnName = this.getPrimaryKeys().iterator().next().getColumnName();
+		Column keyColumn = this.getColumnsAsMap().get(keyColumnName);
+		if (keyColumn == null) {
+			return null;
+		}
+		DataType type = keyColumn.getType();
+		boolean integer = type == DataType.TINYINT || type == DataType.SMALLINT || type == DataType.INT || type == DataType.BIGINT;
+		return integer ? keyColumn : null;
 	}
 
+	// helper methods
 	/**
 	 * @return the columns as key-value pairs where the key is the column name
 	 */
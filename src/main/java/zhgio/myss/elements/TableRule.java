@@ -0,0 +1,42 @@
+package zhgio.myss.elements;
+
+import lombok.Data;
+import zhgio.myss.contracts.SamplingStrategy;
+
+/**
+ * Per-table settings from the rules file, like how many rows or which rows to take from a seed table, how to sample
+ * it, or which column an incremental refresh tracks. The table name may be a glob, see {@link zhgio.myss.commons.TableRules}.
+ */
+@Data
+public class TableRule {
+
+	private final String tableName;
+	private String where;
+	private long rowLimit; // 0 means no limit
+	private String watermarkColumn; // column tracked by incremental refreshes, overrides the default detection
+	private SamplingStrategy sampling; // reads the seed rows through the primary key, the limit does not apply then
+	private boolean structureOnly; // the table is created, its rows are not copied
+
+	/**
+	 * @return the clause following the FROM part of the select for this table, or an empty string
+	 */
+	public String toSelectClause() {
+		return toSelectClause(rowLimit);
+	}
+
+	/**
+	 * @param rowLimit - rows to take at most instead of the rule's limit, 0 for all
+	 * @return the clause following the FROM part of the select for this table, or an empty string
+	 */
+	public String toSelectClause(long rowLimit) {
+		StringBuilder sb = new StringBuilder();
+		if (where != null && !where.isEmpty()) {
+			sb.append("WHERE ").append(where);
+		}
+		if (rowLimit > 0) {
+			sb.append(sb.length() > 0 ? " " : "").append("LIMIT ").append(rowLimit);
+		}
+		return sb.toString();
+	}
+
+}
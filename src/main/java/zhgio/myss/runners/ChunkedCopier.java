@@ -0,0 +1,263 @@
+package zhgio.myss.runners;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.Metrics;
+import zhgio.myss.commons.ProgressJournal;
+import zhgio.myss.commons.Query;
+import zhgio.myss.commons.TableRules;
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.KeyRange;
+import zhgio.myss.elements.Table;
+import zhgio.myss.elements.TableRule;
+
+import static zhgio.myss.commons.Keyword.EMPTY_STR;
+
+/**
+ * Copies big tables with several workers at once.
+ * Tables with a single column integer primary key are split into key ranges of about chunkRows rows each,
+ * every range is streamed in key order by its own reader/writer pair so inserts stay append-only on the destination.
+ * Everything else goes through a single stream. Units of different tables share the workers, see {@link #copyTables}.
+ * With a journal, finished tables and chunks are recorded and skipped by a resumed run; work that was cut short is
+ * removed from the destination (the chunk's key range, or the whole single stream table) and copied again.
+ * The where of a table's rule narrows every chunk, a table with a row limit goes through a single stream.
+ */
+@Slf4j
+public class ChunkedCopier implements AutoCloseable {
+
+	private final JdbcTemplate originTemplate;
+	private final DataCopier dataCopier;
+	private final long chunkRows;
+	private final ExecutorService executor;
+	private final ProgressJournal journal;
+	private final List<Schemer> destinationSchemers;
+	private final TableRules tableRules;
+
+	public ChunkedCopier(DataSource origin, DataCopier dataCopier, long chunkRows, int workers) {
+		this(origin, dataCopier, chunkRows, workers, null, Collections.emptyList());
+	}
+
+	/**
+	 * @param journal - records the progress, null copies everything without one
+	 * @param destinationSchemer - clears the partial work of an interrupted run, needed with a journal
+	 */
+	public ChunkedCopier(DataSource origin, DataCopier dataCopier, long chunkRows, int workers, ProgressJournal journal, Schemer destinationSchemer) {
+		this(origin, dataCopier, chunkRows, workers, journal, Collections.singletonList(destinationSchemer));
+	}
+
+	/**
+	 * @param destinationSchemers - every destination the data copier writes to, all cleared on a resumed run
+	 */
+	public ChunkedCopier(DataSource origin, DataCopier dataCopier, long chunkRows, int workers, ProgressJournal journal, List<Schemer> destinationSchemers) {
+		this(origin, dataCopier, chunkRows, workers, journal, destinationSchemers, TableRules.none());
+	}
+
+	/**
+	 * @param tableRules - narrow down the rows copied of a table
+	 */
+	public ChunkedCopier(DataSource origin, DataCopier dataCopier, long chunkRows, int workers, ProgressJournal journal, List<Schemer> destinationSchemers,
+			TableRules tableRules) {
+		this.originTemplate = new JdbcTemplate(origin);
+		this.dataCopier = dataCopier;
+		this.chunkRows = chunkRows;
+		this.executor = Executors.newFixedThreadPool(workers);
+		this.journal = journal;
+		this.destinationSchemers = destinationSchemers;
+		this.tableRules = tableRules;
+	}
+
+	/**
+	 * @return the number of copied rows
+	 */
+	public long copyTable(Table table) throws SQLException {
+		return copyTables(Collections.singletonList(table));
+	}
+
+	/**
+	 * Queues single stream tables and the chunks of split tables in the given order, every worker picks the next unit
+	 * as soon as it is free, so workers are kept busy across table boundaries. Ordered largest first (see
+	 * {@link RunPlanner}) this is LPT list scheduling.
+	 * @return the number of copied rows
+	 */
+	public long copyTables(List<Table> tables) throws SQLException {
+		List<Future<Long>> futures = new ArrayList<>();
+		try {
+			for (Table table : tables) {
+				if (journal != null && journal.isDone(ProgressJournal.tableKey(table.getTableName()))) {
+					log.info("Skipping table {}, copied by a previous run", table.getTableName());
+					continue;
+				}
+				futures.addAll(submitTable(table));
+			}
+			long rows = 0;
+			for (Future<Long> future : futures) {
+				rows += await(future);
+			}
+			return rows;
+		} catch (SQLException e) {
+			futures.forEach(future -> future.cancel(false));
+			throw e;
+		}
+	}
+
+	private List<Future<Long>> submitTable(Table table) throws SQLException {
+		Column keyColumn = table.getIntegerPrimaryKeyColumn();
+		TableRule rule = tableRules.getRule(table.getTableName());
+		String where = rule == null || rule.getWhere() == null || rule.getWhere().isEmpty() ? null : rule.getWhere();
+		if (keyColumn == null || table.getNumberOfRowsApprox() <= chunkRows || rule != null && rule.getRowLimit() > 0) {
+			String clause = rule == null ? EMPTY_STR : rule.toSelectClause();
+			TableCopy tableCopy = new TableCopy(table, 1, !clause.isEmpty());
+			return Collections.singletonList(executor.submit(() -> {
+				log.debug("Copying table {} in a single stream", table.getTableName());
+				if (journal != null && journal.isResumed()) {
+					destinationSchemers.forEach(destinationSchemer -> destinationSchemer.truncateTable(table));
+				}
+				return tableCopy.unitDone(dataCopier.copyRows(table, clause));
+			}));
+		}
+
+		List<KeyRange> ranges = new ArrayList<>();
+		for (KeyRange range : splitIntoRanges(table, keyColumn)) {
+			if (journal == null || !journal.isDone(ProgressJournal.chunkKey(table.getTableName(), range.getLowerBound(), range.getUpperBound()))) {
+				ranges.add(range);
+			}
+		}
+		log.info("Copying table {} in {} chunks of ~{} rows", table.getTableName(), ranges.size(), chunkRows);
+		TableCopy tableCopy = new TableCopy(table, ranges.size(), where != null);
+		if (ranges.isEmpty()) {
+			tableCopy.finish();
+			return Collections.emptyList();
+		}
+		List<Future<Long>> futures = new ArrayList<>();
+		for (KeyRange range : ranges) {
+			futures.add(executor.submit(() -> {
+				if (journal != null && journal.isResumed()) {
+					destinationSchemers.forEach(destinationSchemer -> destinationSchemer.deleteKeyRange(table, keyColumn, range));
+				}
+				long chunkRowsCopied = copyChunk(table, keyColumn, range, where);
+				markDone(ProgressJournal.chunkKey(table.getTableName(), range.getLowerBound(), range.getUpperBound()));
+				return tableCopy.unitDone(chunkRowsCopied);
+			}));
+		}
+		return futures;
+	}
+
+	private long copyChunk(Table table, Column keyColumn, KeyRange range, String where) throws SQLException {
+		long start = System.nanoTime();
+		long rows = dataCopier.copyRows(table, where == null ? range.toSelectClause(keyColumn.getColumnName()) : range.toSelectClause(keyColumn.getColumnName(), where));
+		Metrics.recordLatency(Metrics.COPY_CHUNK, start);
+		long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		log.info("Chunk [{}, {}] of table {}: {} rows in {} ms ({} rows/s)", range.getLowerBound(), range.getUpperBound(), table.getTableName(), rows, millis, rows * 1000 / millis);
+		return rows;
+	}
+
+	/**
+	 * Tracks the units of one table in flight, the worker finishing the last one marks the table done.
+	 */
+	private class TableCopy {
+
+		private final Table table;
+		private final long start = System.nanoTime();
+		private final AtomicInteger remainingUnits;
+		private final AtomicLong rows = new AtomicLong();
+		private final boolean filtered; // a rule narrows the rows down, fewer than counted are expected
+
+		private TableCopy(Table table, int units, boolean filtered) {
+			this.table = table;
+			this.remainingUnits = new AtomicInteger(units);
+			this.filtered = filtered;
+		}
+
+		private long unitDone(long unitRows) throws SQLException {
+			rows.addAndGet(unitRows);
+			if (remainingUnits.decrementAndGet() == 0) {
+				finish();
+			}
+			return unitRows;
+		}
+
+		private void finish() throws SQLException {
+			markDone(ProgressJournal.tableKey(table.getTableName()));
+			Metrics.recordLatency(Metrics.COPY_TABLE, start);
+			long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			log.info("Copied {} rows into table {} in {} ms ({} rows/s)", rows.get(), table.getTableName(), millis, rows.get() * 1000 / millis);
+			if (table.isRowCountFresh() && rows.get() != table.getNumberOfRowsExact() && !filtered && (journal == null || !journal.isResumed())) {
+				log.warn("Copied {} rows into table {} but counted {} in the origin before the copy, rows were changed meanwhile or lost", rows.get(), table.getTableName(),
+						table.getNumberOfRowsExact());
+			}
+		}
+	}
+
+	private void markDone(String key) throws SQLException {
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.markDone(key);
+		} catch (IOException e) {
+			throw new SQLException("Could not write the progress journal", e);
+		}
+	}
+
+	/**
+	 * Splits [min key, max key] into ranges of equal width, as many as the approximate row count needs.
+	 * Gaps in the key space only make some chunks smaller than chunkRows.
+	 * The split is journaled so a resumed run works on the same ranges even if the origin statistics changed.
+	 */
+	List<KeyRange> splitIntoRanges(Table table, Column keyColumn) throws SQLException {
+		String splitKey = ProgressJournal.splitKey(table.getTableName());
+		String journaledSplit = journal == null ? null : journal.get(splitKey);
+		if (journaledSplit != null) {
+			String[] split = journaledSplit.split(" ");
+			return KeyRange.split(Long.parseLong(split[0]), Long.parseLong(split[1]), Long.parseLong(split[2]));
+		}
+
+		Long[] bounds = originTemplate.queryForObject(String.format(Query.QUERY_KEY_BOUNDS, keyColumn.getColumnName(), table.getTableName()),
+				(rs, rowNum) -> new Long[] { rs.getObject("lower_bound") == null ? null : rs.getLong("lower_bound"), rs.getLong("upper_bound") });
+		if (bounds == null || bounds[0] == null) {
+			return new ArrayList<>(); // empty table
+		}
+		long chunks = Math.max(1, (table.getNumberOfRowsApprox() + chunkRows - 1) / chunkRows);
+		if (journal != null) {
+			try {
+				journal.put(splitKey, bounds[0] + " " + bounds[1] + " " + chunks);
+			} catch (IOException e) {
+				throw new SQLException("Could not write the progress journal", e);
+			}
+		}
+		return KeyRange.split(bounds[0], bounds[1], chunks);
+	}
+
+	private long await(Future<Long> future) throws SQLException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for chunks", e);
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+}
@@ -0,0 +1,214 @@
+package zhgio.myss.runners;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.MaskingRules;
+import zhgio.myss.commons.Metrics;
+import zhgio.myss.commons.RowMasker;
+import zhgio.myss.contracts.RowWriter;
+import zhgio.myss.contracts.RowWriterFactory;
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.Table;
+
+import static zhgio.myss.commons.Keyword.BACKTICK;
+import static zhgio.myss.commons.Keyword.EMPTY_STR;
+
+/**
+ * Copies table rows from the origin to the destination.
+ * A reader thread streams the origin result set row by row (so heap use does not depend on the table size)
+ * and hands batches over a bounded queue to the writer thread, which passes them on to a {@link RowWriter}.
+ * With masking rules, the reader masks every row in place right after reading it, so no unmasked value reaches a writer.
+ */
+@Slf4j
+public class DataCopier {
+
+	private static final List<Object[]> END_OF_ROWS = new ArrayList<>(); // marks the end of the stream in the queue
+	private static final long PROGRESS_LOG_INTERVAL = 1_000_000;
+
+	private final DataSource origin;
+	private final RowWriterFactory writerFactory;
+	private final int batchSize;
+	private final int queueCapacity;
+	private final MaskingRules maskingRules;
+
+	public DataCopier(DataSource origin, RowWriterFactory writerFactory, int batchSize, int queueCapacity) {
+		this(origin, writerFactory, batchSize, queueCapacity, null);
+	}
+
+	/**
+	 * @param maskingRules - compiled for every copied stream of rows, null copies the values as they are
+	 */
+	public DataCopier(DataSource origin, RowWriterFactory writerFactory, int batchSize, int queueCapacity, MaskingRules maskingRules) {
+		this.origin = origin;
+		this.writerFactory = writerFactory;
+		this.batchSize = batchSize;
+		this.queueCapacity = queueCapacity;
+		this.maskingRules = maskingRules;
+	}
+
+	/**
+	 * Copies every row of the table.
+	 * @return the number of copied rows
+	 */
+	public long copyTable(Table table) throws SQLException {
+		return copyRows(table, EMPTY_STR);
+	}
+
+	/**
+	 * Copies the rows selected by the given clause.
+	 * @param clause - anything that can follow the FROM part of the select, like a WHERE, ORDER BY or LIMIT
+	 * @return the number of copied rows
+	 */
+	public long copyRows(Table table, String clause) throws SQLException {
+		return copyRows(table, clause, null);
+	}
+
+	/**
+	 * Copies the rows selected by the given clause, showing every row to the filter as it is read, the rows it rejects
+	 * are not copied. The filter runs on the reader thread and sees the origin values, everything it collected is
+	 * visible once this method returns.
+	 */
+	public long copyRows(Table table, String clause, Predicate<Object[]> rowFilter) throws SQLException {
+		BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(queueCapacity);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		String select = "SELECT " + columnList(table) + " FROM " + BACKTICK + table.getTableName() + BACKTICK + (clause.isEmpty() ? EMPTY_STR : " " + clause);
+
+		RowMasker rowMasker = maskingRules == null ? null : maskingRules.compile(table);
+		Thread reader = new Thread(() -> readRows(select, table.getColumns().size(), rowFilter, rowMasker, queue, failure), "myss-reader-" + table.getTableName());
+		reader.start();
+		long start = System.nanoTime();
+		long rows = 0;
+		try {
+			rows = writeRows(table, queue, failure);
+		} catch (SQLException | RuntimeException e) {
+			failure.compareAndSet(null, e);
+			queue.clear(); // unblock the reader so it can notice the failure
+		} finally {
+			joinReader(reader);
+		}
+		if (failure.get() != null) {
+			throw new SQLException("Copying rows of table " + table.getTableName() + " failed", failure.get());
+		}
+		long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		log.info("Copied {} rows into table {} in {} ms ({} rows/s)", rows, table.getTableName(), millis, rows * 1000 / millis);
+		return rows;
+	}
+
+	/**
+	 * Streams the select through a forward-only, read-only statement with the MySQL streaming fetch size,
+	 * so the driver never buffers the whole result set. Once the writer failed the statement is cancelled.
+	 */
+	private void readRows(String select, int columnCount, Predicate<Object[]> rowFilter, RowMasker rowMasker, BlockingQueue<List<Object[]>> queue,
+			AtomicReference<Throwable> failure) {
+		try (Connection connection = origin.getConnection();
+				Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			statement.setFetchSize(Integer.MIN_VALUE);
+			log.debug("Streaming rows with {}", select);
+			try (ResultSet rs = statement.executeQuery(select)) {
+				List<Object[]> batch = new ArrayList<>(batchSize);
+				while (rs.next() && failure.get() == null) {
+					Object[] row = new Object[columnCount];
+					for (int i = 0; i < columnCount; i++) {
+						row[i] = rs.getObject(i + 1);
+					}
+					if (rowFilter != null && !rowFilter.test(row)) {
+						continue;
+					}
+					if (rowMasker != null) {
+						rowMasker.mask(row);
+					}
+					batch.add(row);
+					if (batch.size() == batchSize) {
+						hand(queue, batch, failure);
+						batch = new ArrayList<>(batchSize);
+					}
+				}
+				if (failure.get() != null) {
+					statement.cancel(); // the writer failed, closing a streaming result set would read the rest of it first
+					return;
+				}
+				if (!batch.isEmpty()) {
+					hand(queue, batch, failure);
+				}
+			}
+		} catch (SQLException | RuntimeException e) {
+			failure.compareAndSet(null, e);
+		} catch (InterruptedException e) {
+			failure.compareAndSet(null, e);
+			Thread.currentThread().interrupt();
+		} finally {
+			if (failure.get() != null) {
+				queue.clear(); // leftover batches are useless after a failure, and END_OF_ROWS needs the room
+			}
+			try {
+				hand(queue, END_OF_ROWS, failure);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Blocks while the queue is full, giving up as soon as the other side failed.
+	 */
+	private void hand(BlockingQueue<List<Object[]>> queue, List<Object[]> batch, AtomicReference<Throwable> failure) throws InterruptedException {
+		while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+			if (failure.get() != null) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Hands every batch from the queue to a writer opened for the table.
+	 */
+	private long writeRows(Table table, BlockingQueue<List<Object[]>> queue, AtomicReference<Throwable> failure) throws SQLException {
+		long rows = 0;
+		long nextProgressLog = PROGRESS_LOG_INTERVAL;
+		long start = System.nanoTime();
+		try (RowWriter writer = writerFactory.open(table)) {
+			List<Object[]> batch;
+			while ((batch = queue.take()) != END_OF_ROWS) {
+				writer.write(batch);
+				rows += batch.size();
+				Metrics.addRows(batch.size());
+				if (rows >= nextProgressLog) {
+					long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+					log.info("Table {}: {} rows so far ({} rows/s)", table.getTableName(), rows, rows * 1000 / millis);
+					nextProgressLog += PROGRESS_LOG_INTERVAL;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure.compareAndSet(null, e);
+		}
+		return rows;
+	}
+
+	private void joinReader(Thread reader) {
+		try {
+			reader.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private String columnList(Table table) {
+		return table.getColumns().stream().map(Column::getColumnName).map(name -> BACKTICK + name + BACKTICK).collect(Collectors.joining(","));
+	}
+
+}
@@ -0,0 +1,340 @@
+package zhgio.myss.runners;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.Metrics;
+import zhgio.myss.commons.ProgressJournal;
+import zhgio.myss.commons.TableRules;
+import zhgio.myss.elements.Index;
+import zhgio.myss.elements.Key;
+import zhgio.myss.elements.Table;
+
+/**
+ * Introspects and creates tables in three concurrent stages connected by bounded queues, so the origin is read while
+ * the destination executes DDL and the run takes about as long as its slowest stage:
+ * <ol>
+ * <li>introspection - per-table metadata calls, every worker on its own origin connection</li>
+ * <li>writing - the CREATE TABLE statements, without foreign keys, on a single thread</li>
+ * <li>execution - the statements, every worker on its own destination connection</li>
+ * </ol>
+ * The foreign keys of a table are added by the execution stage as soon as the table and every table it references
+ * exist, in between the CREATE statements of the tables still coming.
+ * With a journal, tables created by a previous run are still introspected but their statements are skipped.
+ */
+@Slf4j
+public class DdlPipeline {
+
+	private static final long POLL_MILLIS = 100;
+
+	private final DataSource origin;
+	private final DataSource destination;
+	private final int introspectionWorkers;
+	private final int executionWorkers;
+	private final int queueCapacity;
+	private final ProgressJournal journal;
+	private final TableRules tableRules;
+
+	private final AtomicReference<Exception> failure = new AtomicReference<>();
+	private final Queue<String> failedStatements = new ConcurrentLinkedQueue<>(); // journal keys of statements the destination rejected
+	private final AtomicReference<SQLException> statementFailure = new AtomicReference<>();
+	private final AtomicInteger droppedForeignKeys = new AtomicInteger();
+	private final AtomicLong introspectionNanos = new AtomicLong();
+	private final AtomicLong writingNanos = new AtomicLong();
+	private final AtomicLong executionNanos = new AtomicLong();
+
+	/**
+	 * @param queueCapacity - tables buffered between two stages
+	 * @param tableRules - the foreign keys of introspected tables referencing a table left out are dropped
+	 */
+	public DdlPipeline(DataSource origin, DataSource destination, int introspectionWorkers, int executionWorkers, int queueCapacity, ProgressJournal journal,
+			TableRules tableRules) {
+		this.origin = origin;
+		this.destination = destination;
+		this.introspectionWorkers = introspectionWorkers;
+		this.executionWorkers = executionWorkers;
+		this.queueCapacity = queueCapacity;
+		this.journal = journal;
+		this.tableRules = tableRules;
+	}
+
+	/**
+	 * @param tables - tables known by name only, their model is filled by the introspection stage
+	 * @param deferIndices - creates the tables without their deferrable secondary indices, see {@link DdlScheduler#addIndices(List)}
+	 */
+	public void run(List<Table> tables, boolean deferIndices) throws SQLException, IOException {
+		long start = System.nanoTime();
+		BlockingQueue<Table> introspected = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Table> written = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Table> constrained = new LinkedBlockingQueue<>(); // fed by the execution stage itself, unbounded so it never waits on its own workers
+		ConstraintTracker constraintTracker = new ConstraintTracker(tables);
+		AtomicInteger remainingStatements = new AtomicInteger(tables.size());
+
+		List<Connection> connections = new ArrayList<>();
+		BlockingQueue<Schemer> originSchemers = new ArrayBlockingQueue<>(introspectionWorkers);
+		BlockingQueue<Schemer> destinationSchemers = new ArrayBlockingQueue<>(executionWorkers);
+		ExecutorService introspectors = Executors.newFixedThreadPool(introspectionWorkers);
+		ExecutorService stages = Executors.newFixedThreadPool(executionWorkers + 1);
+		try {
+			for (int i = 0; i < introspectionWorkers; i++) {
+				originSchemers.add(new Schemer(new SingleConnectionDataSource(connect(origin, connections), true)));
+			}
+			for (int i = 0; i < executionWorkers; i++) {
+				destinationSchemers.add(new Schemer(new SingleConnectionDataSource(connect(destination, connections), true)));
+			}
+
+			List<Future<?>> futures = new ArrayList<>();
+			for (Table table : tables) {
+				futures.add(introspectors.submit(() -> introspect(table, originSchemers, introspected)));
+			}
+			futures.add(stages.submit(() -> write(tables.size(), introspected, written, deferIndices, remainingStatements)));
+			for (int i = 0; i < executionWorkers; i++) {
+				futures.add(stages.submit(() -> execute(written, constrained, destinationSchemers, constraintTracker, remainingStatements)));
+			}
+			for (Future<?> future : futures) {
+				await(future);
+			}
+		} finally {
+			introspectors.shutdownNow();
+			stages.shutdownNow();
+			for (Connection connection : connections) {
+				connection.close();
+			}
+		}
+		if (journal != null) {
+			journal.sync();
+		}
+		if (droppedForeignKeys.get() > 0) {
+			log.warn("Dropped {} foreign keys referencing tables left out by the table rules", droppedForeignKeys.get());
+		}
+		if (failure.get() != null) {
+			throw failure.get() instanceof SQLException ? (SQLException) failure.get() : new SQLException("DDL pipeline failed", failure.get());
+		}
+		if (statementFailure.get() != null) {
+			log.error("{} statements failed: {}", failedStatements.size(), String.join(",", failedStatements));
+			throw statementFailure.get();
+		}
+		log.info("Pipelined {} tables in {} ms, busy time per stage: introspection {} ms over {} workers, writing {} ms, execution {} ms over {} workers", tables.size(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), TimeUnit.NANOSECONDS.toMillis(introspectionNanos.get()), introspectionWorkers,
+				TimeUnit.NANOSECONDS.toMillis(writingNanos.get()), TimeUnit.NANOSECONDS.toMillis(executionNanos.get()), executionWorkers);
+	}
+
+	private Void introspect(Table table, BlockingQueue<Schemer> schemers, BlockingQueue<Table> introspected) throws Exception {
+		if (failure.get() != null) {
+			return null;
+		}
+		Schemer schemer = schemers.take();
+		try {
+			long start = System.nanoTime();
+			schemer.introspectTable(table);
+			droppedForeignKeys.addAndGet(tableRules.dropForeignKeysToUnselected(table));
+			introspectionNanos.addAndGet(System.nanoTime() - start);
+		} catch (SQLException | RuntimeException e) {
+			fail(e);
+			throw e;
+		} finally {
+			schemers.put(schemer);
+		}
+		put(introspected, table);
+		return null;
+	}
+
+	private Void write(int tableCount, BlockingQueue<Table> introspected, BlockingQueue<Table> written, boolean deferIndices, AtomicInteger remainingStatements)
+			throws InterruptedException {
+		for (int i = 0; i < tableCount; i++) {
+			Table table = poll(introspected);
+			if (table == null) {
+				return null;
+			}
+			long start = System.nanoTime();
+			if (!table.getForeignKeys().isEmpty()) {
+				remainingStatements.incrementAndGet(); // its constraints come as one more statement
+			}
+			if (journal == null || !journal.isDone(ProgressJournal.createKey(table.getTableName()))) {
+				if (deferIndices) {
+					Set<Index> indices = new LinkedHashSet<>(table.getIndices());
+					indices.removeAll(table.getDeferrableIndices());
+					table.writeCreateStatement(Collections.emptySet(), indices);
+				} else {
+					table.writeCreateStatement(Collections.emptySet());
+				}
+			}
+			writingNanos.addAndGet(System.nanoTime() - start);
+			put(written, table);
+		}
+		return null;
+	}
+
+	/**
+	 * Constraints of tables whose references exist go first, they unblock nothing but are ready now.
+	 */
+	private Void execute(BlockingQueue<Table> written, BlockingQueue<Table> constrained, BlockingQueue<Schemer> schemers, ConstraintTracker constraintTracker,
+			AtomicInteger remainingStatements) throws Exception {
+		while (remainingStatements.get() > 0 && failure.get() == null) {
+			Table table = constrained.poll();
+			boolean constraints = table != null;
+			if (table == null) {
+				table = written.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (table == null) {
+					continue;
+				}
+			}
+			String journalKey = constraints ? ProgressJournal.constraintsKey(table.getTableName()) : ProgressJournal.createKey(table.getTableName());
+			if (journal == null || !journal.isDone(journalKey)) {
+				if (constraints) {
+					table.writeAlterTableAddFkConstraintsStatement();
+				}
+				executeStatement(table, schemers, journalKey);
+			}
+			if (!constraints) {
+				constrained.addAll(constraintTracker.created(table));
+			}
+			remainingStatements.decrementAndGet();
+		}
+		return null;
+	}
+
+	/**
+	 * A failed statement does not stop the pipeline, the other tables still get created, but the run fails once it
+	 * drained, like with {@link DdlScheduler}. The statement is not journaled, the next run retries it.
+	 */
+	private void executeStatement(Table table, BlockingQueue<Schemer> schemers, String journalKey) throws InterruptedException, IOException {
+		Schemer schemer = schemers.take();
+		long start = System.nanoTime();
+		try {
+			schemer.executeStatement(table);
+			Metrics.recordLatency(Metrics.DDL_STATEMENT, start);
+			if (journal != null) {
+				journal.markDone(journalKey);
+			}
+		} catch (RuntimeException e) {
+			log.error("Error executing statement for table {}", table.getTableName(), e);
+			failedStatements.add(journalKey);
+			if (!statementFailure.compareAndSet(null, new SQLException("Statement failed for table " + table.getTableName(), e))) {
+				statementFailure.get().addSuppressed(e);
+			}
+		} finally {
+			table.setSqlStatement(null);
+			executionNanos.addAndGet(System.nanoTime() - start);
+			schemers.put(schemer);
+		}
+	}
+
+	private Table poll(BlockingQueue<Table> queue) throws InterruptedException {
+		while (failure.get() == null) {
+			Table table = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			if (table != null) {
+				return table;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Waits for room in the queue unless the pipeline failed, its consumers may be gone by then.
+	 */
+	private void put(BlockingQueue<Table> queue, Table table) throws InterruptedException {
+		while (failure.get() == null && !queue.offer(table, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+			// the next stage is behind, keep waiting
+		}
+	}
+
+	private void fail(Exception e) {
+		if (failure.compareAndSet(null, e)) {
+			log.error("Stopping the DDL pipeline: {}", e.getMessage());
+		}
+	}
+
+	private void await(Future<?> future) {
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			fail(e.getCause() instanceof Exception ? (Exception) e.getCause() : new IllegalStateException(e.getCause()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(e);
+		}
+	}
+
+	private static Connection connect(DataSource dataSource, List<Connection> connections) throws SQLException {
+		Connection connection = dataSource.getConnection();
+		connections.add(connection);
+		return connection;
+	}
+
+	/**
+	 * Tells which tables can get their foreign keys once a table is created: those whose own table and every referenced
+	 * table of this run exist. Tables referenced from outside the run are assumed to exist already.
+	 */
+	private static class ConstraintTracker {
+
+		private final Set<String> tableNames = new HashSet<>();
+		private final Set<String> createdTables = new HashSet<>();
+		private final Map<String, Set<String>> waitingFor = new HashMap<>(); // table to add constraints to -> tables still missing
+		private final Map<String, List<Table>> waitingOn = new HashMap<>(); // missing table -> tables waiting for it
+
+		private ConstraintTracker(List<Table> tables) {
+			tables.forEach(table -> tableNames.add(table.getTableName()));
+		}
+
+		/**
+		 * @return the tables whose constraints can be added now
+		 */
+		private synchronized List<Table> created(Table table) {
+			List<Table> ready = new ArrayList<>();
+			createdTables.add(table.getTableName());
+			if (!table.getForeignKeys().isEmpty()) {
+				Set<String> missing = new HashSet<>();
+				for (Key fk : table.getForeignKeys()) {
+					if (tableNames.contains(fk.getTableName()) && !createdTables.contains(fk.getTableName())) {
+						missing.add(fk.getTableName());
+					}
+				}
+				if (missing.isEmpty()) {
+					ready.add(table);
+				} else {
+					waitingFor.put(table.getTableName(), missing);
+					missing.forEach(name -> waitingOn.computeIfAbsent(name, missingName -> new ArrayList<>()).add(table));
+				}
+			}
+			for (Table waiting : waitingOn.getOrDefault(table.getTableName(), Collections.emptyList())) {
+				Set<String> missing = waitingFor.get(waiting.getTableName());
+				missing.remove(table.getTableName());
+				if (missing.isEmpty()) {
+					waitingFor.remove(waiting.getTableName());
+					ready.add(waiting);
+				}
+			}
+			waitingOn.remove(table.getTableName());
+			return ready;
+		}
+	}
+
+}
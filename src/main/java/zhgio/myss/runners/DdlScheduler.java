@@ -0,0 +1,270 @@
+package zhgio.myss.runners;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.Metrics;
+import zhgio.myss.commons.ProgressJournal;
+import zhgio.myss.elements.Index;
+import zhgio.myss.elements.Key;
+import zhgio.myss.elements.Table;
+
+/**
+ * Creates tables in parallel, ordered by the foreign key dependency graph.
+ * Tables are topologically sorted into levels where every table only references tables of previous levels,
+ * so their constraints can be declared inline. Tables caught in a cycle get their cyclic constraints deferred to ALTERs.
+ * Secondary indices can be left out of the CREATE statements and built once the data is loaded.
+ * With a journal, every executed statement is recorded and the statements of a previous run are skipped.
+ */
+@Slf4j
+public class DdlScheduler {
+
+	private final DataSource dataSource;
+	private final int workers;
+	private final ProgressJournal journal;
+
+	public DdlScheduler(DataSource dataSource, int workers) {
+		this(dataSource, workers, null);
+	}
+
+	public DdlScheduler(DataSource dataSource, int workers, ProgressJournal journal) {
+		this.dataSource = dataSource;
+		this.workers = workers;
+		this.journal = journal;
+	}
+
+	/**
+	 * Runs every CREATE TABLE level by level, then the deferred ALTER TABLE statements.
+	 */
+	public void createTables(List<Table> tables) throws SQLException, IOException {
+		createTables(tables, false);
+	}
+
+	/**
+	 * @param deferIndices - creates the tables with only their primary key and the indices backing foreign keys,
+	 * the other secondary indices are left to {@link #addIndices(List)} once the data is loaded
+	 */
+	public void createTables(List<Table> tables, boolean deferIndices) throws SQLException, IOException {
+		Map<String, Table> tablesByName = new LinkedHashMap<>();
+		tables.forEach(table -> tablesByName.put(table.getTableName(), table));
+
+		Map<String, Set<Key>> deferredForeignKeys = new LinkedHashMap<>(); // by table name, the hash of a table changes with its statement
+		List<List<Table>> levels = sortIntoLevels(tablesByName, deferredForeignKeys);
+		log.info("Scheduled {} tables in {} levels with {} tables deferring constraints", tables.size(), levels.size(), deferredForeignKeys.size());
+
+		onWorkers((executor, schemers) -> {
+			long start = System.nanoTime();
+			int levelNumber = 0;
+			for (List<Table> level : levels) {
+				log.info("Creating level {} with {} tables", levelNumber++, level.size());
+				runAll(executor, schemers, level, ProgressJournal::createKey, table -> {
+					Set<Key> inlineForeignKeys = new LinkedHashSet<>(table.getForeignKeys());
+					inlineForeignKeys.removeAll(deferredForeignKeys.getOrDefault(table.getTableName(), new HashSet<>()));
+					if (deferIndices) {
+						Set<Index> indices = new LinkedHashSet<>(table.getIndices());
+						indices.removeAll(table.getDeferrableIndices());
+						table.writeCreateStatement(inlineForeignKeys, indices);
+					} else {
+						table.writeCreateStatement(inlineForeignKeys);
+					}
+				});
+			}
+
+			Metrics.recordPhase(Metrics.DDL, start);
+
+			start = System.nanoTime();
+			log.info("Adding {} deferred foreign key constraint statements", deferredForeignKeys.size());
+			List<Table> deferringTables = new ArrayList<>();
+			deferredForeignKeys.keySet().forEach(tableName -> deferringTables.add(tablesByName.get(tableName)));
+			runAll(executor, schemers, deferringTables, ProgressJournal::constraintsKey,
+					table -> table.writeAlterTableAddFkConstraintsStatement(deferredForeignKeys.get(table.getTableName())));
+			Metrics.recordPhase(Metrics.CONSTRAINTS, start);
+		});
+	}
+
+	/**
+	 * Builds the secondary indices left out by {@link #createTables(List, boolean)}, one ALTER TABLE per table adding
+	 * all of its indices at once, tables in parallel.
+	 */
+	public void addIndices(List<Table> tables) throws SQLException, IOException {
+		List<Table> indexedTables = new ArrayList<>();
+		tables.stream().filter(table -> !table.getDeferrableIndices().isEmpty()).forEach(indexedTables::add);
+		indexedTables.sort(Comparator.comparingLong(Table::getNumberOfRowsApprox).reversed()); // the biggest builds start first
+		log.info("Building the deferred indices of {} tables", indexedTables.size());
+		onWorkers((executor, schemers) -> runAll(executor, schemers, indexedTables, ProgressJournal::indicesKey,
+				table -> table.writeAlterTableAddIndicesStatement(table.getDeferrableIndices())));
+	}
+
+	/**
+	 * Runs the work on a pool where every worker has its own dedicated destination connection.
+	 */
+	private void onWorkers(WorkerPoolTask task) throws SQLException, IOException {
+		List<Connection> connections = new ArrayList<>();
+		BlockingQueue<Schemer> schemers = new ArrayBlockingQueue<>(workers);
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			for (int i = 0; i < workers; i++) {
+				Connection connection = dataSource.getConnection();
+				connections.add(connection);
+				schemers.add(new Schemer(new SingleConnectionDataSource(connection, true)));
+			}
+			task.run(executor, schemers);
+		} finally {
+			executor.shutdown();
+			for (Connection connection : connections) {
+				connection.close();
+			}
+		}
+	}
+
+	private interface WorkerPoolTask {
+
+		void run(ExecutorService executor, BlockingQueue<Schemer> schemers) throws SQLException, IOException;
+	}
+
+	/**
+	 * Kahn's algorithm collecting whole levels at a time.
+	 * Whatever is left once no table is free of dependencies is part of, or depends on, a cycle: those tables
+	 * become the last level and every constraint between them is deferred.
+	 */
+	private List<List<Table>> sortIntoLevels(Map<String, Table> tablesByName, Map<String, Set<Key>> deferredForeignKeys) {
+		Map<String, Set<String>> parents = new HashMap<>();
+		Map<String, Set<String>> children = new HashMap<>();
+		for (Table table : tablesByName.values()) {
+			Set<String> tableParents = new HashSet<>();
+			for (Key fk : table.getForeignKeys()) {
+				String parentName = fk.getTableName();
+				if (parentName.equals(table.getTableName())) {
+					continue; // self references can always be declared inline
+				}
+				if (!tablesByName.containsKey(parentName)) {
+					deferredForeignKeys.computeIfAbsent(table.getTableName(), name -> new LinkedHashSet<>()).add(fk); // parent not part of this run
+					continue;
+				}
+				tableParents.add(parentName);
+				children.computeIfAbsent(parentName, name -> new HashSet<>()).add(table.getTableName());
+			}
+			parents.put(table.getTableName(), tableParents);
+		}
+
+		List<List<Table>> levels = new ArrayList<>();
+		Set<String> remaining = new LinkedHashSet<>(tablesByName.keySet());
+		List<String> current = new ArrayList<>();
+		remaining.stream().filter(name -> parents.get(name).isEmpty()).forEach(current::add);
+		while (!current.isEmpty()) {
+			List<Table> level = new ArrayList<>();
+			List<String> next = new ArrayList<>();
+			for (String name : current) {
+				remaining.remove(name);
+				level.add(tablesByName.get(name));
+				for (String child : children.getOrDefault(name, new HashSet<>())) {
+					Set<String> childParents = parents.get(child);
+					childParents.remove(name);
+					if (childParents.isEmpty()) {
+						next.add(child);
+					}
+				}
+			}
+			levels.add(level);
+			current = next;
+		}
+
+		if (!remaining.isEmpty()) {
+			log.warn("Found foreign key cycles among {} tables, deferring their constraints", remaining.size());
+			List<Table> cyclicLevel = new ArrayList<>();
+			for (String name : remaining) {
+				Table table = tablesByName.get(name);
+				table.getForeignKeys().stream().filter(fk -> !fk.getTableName().equals(name) && remaining.contains(fk.getTableName()))
+						.forEach(fk -> deferredForeignKeys.computeIfAbsent(name, tableName -> new LinkedHashSet<>()).add(fk));
+				cyclicLevel.add(table);
+			}
+			levels.add(cyclicLevel);
+		}
+		return levels;
+	}
+
+	/**
+	 * Writes and executes the statement of every table on the worker pool and waits for all of them.
+	 * Each task borrows a worker schemer so no two statements share a connection.
+	 * Tables whose journal key is already recorded are skipped, the journal is synced once the whole batch is done.
+	 * A failed statement does not stop the others of the batch, the batch then fails as a whole: the journal keeps the
+	 * failed tables for the next run to retry.
+	 */
+	private void runAll(ExecutorService executor, BlockingQueue<Schemer> schemers, List<Table> tables, Function<String, String> journalKey, Consumer<Table> statementWriter)
+			throws SQLException, IOException {
+		List<Future<?>> futures = new ArrayList<>();
+		List<Table> submitted = new ArrayList<>();
+		for (Table table : tables) {
+			if (journal != null && journal.isDone(journalKey.apply(table.getTableName()))) {
+				log.debug("Skipping statement for table {}, executed by a previous run", table.getTableName());
+				continue;
+			}
+			submitted.add(table);
+			futures.add(executor.submit(() -> {
+				Schemer schemer = schemers.take();
+				try {
+					long start = System.nanoTime();
+					statementWriter.accept(table);
+					schemer.executeStatement(table);
+					Metrics.recordLatency(Metrics.DDL_STATEMENT, start);
+					table.setSqlStatement(null); // executed, no need to hold every statement of the schema
+					if (journal != null) {
+						journal.markDone(journalKey.apply(table.getTableName()));
+					}
+				} finally {
+					schemers.put(schemer);
+				}
+				return null;
+			}));
+		}
+		List<String> failedTables = new ArrayList<>();
+		SQLException failure = null;
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				futures.get(i).get();
+			} catch (ExecutionException e) {
+				log.error("Error executing statement for table {}", submitted.get(i).getTableName(), e.getCause());
+				failedTables.add(submitted.get(i).getTableName());
+				if (failure == null) {
+					failure = new SQLException("Statement failed for table " + submitted.get(i).getTableName(), e.getCause());
+				} else {
+					failure.addSuppressed(e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for DDL statements", e);
+			}
+		}
+		if (journal != null) {
+			journal.sync();
+		}
+		if (failure != null) {
+			log.error("Statements failed for {} tables: {}", failedTables.size(), String.join(",", failedTables));
+			throw failure;
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package zhgio.myss.runners;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import zhgio.myss.contracts.RowWriter;
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.Table;
+
+import static zhgio.myss.commons.Keyword.BACKTICK;
+
+/**
+ * Base of the writers loading rows into a destination table over a dedicated connection.
+ * Takes care of the session setup, of committing every write and of handing a clean connection back to the pool.
+ * A bulk load also turns off unique checks for the session, for tables loaded before their secondary indices exist.
+ */
+public abstract class DestinationRowWriter implements RowWriter {
+
+	protected final Table table;
+	protected final Connection connection;
+	protected final boolean bulkLoad;
+	protected boolean failed;
+
+	protected DestinationRowWriter(DataSource destination, Table table) throws SQLException {
+		this(destination, table, false);
+	}
+
+	protected DestinationRowWriter(DataSource destination, Table table, boolean bulkLoad) throws SQLException {
+		this.table = table;
+		this.bulkLoad = bulkLoad;
+		this.connection = destination.getConnection();
+		try {
+			executeOnSession("SET foreign_key_checks = 0"); // tables are filled in any order, parents may come later
+			if (bulkLoad) {
+				executeOnSession("SET unique_checks = 0");
+			}
+			connection.setAutoCommit(false);
+		} catch (SQLException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends the rows to the destination, the caller commits.
+	 */
+	protected abstract void load(List<Object[]> rows) throws SQLException;
+
+	@Override
+	public void write(List<Object[]> rows) throws SQLException {
+		try {
+			load(rows);
+			connection.commit();
+		} catch (SQLException e) {
+			failed = true;
+			connection.rollback();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws SQLException {
+		try {
+			connection.setAutoCommit(true);
+			executeOnSession("SET foreign_key_checks = 1"); // pooled connections keep their session variables
+			if (bulkLoad) {
+				executeOnSession("SET unique_checks = 1");
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	protected void executeOnSession(String sql) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	protected String columnList() {
+		return table.getColumns().stream().map(Column::getColumnName).map(name -> BACKTICK + name + BACKTICK).collect(Collectors.joining(","));
+	}
+
+}
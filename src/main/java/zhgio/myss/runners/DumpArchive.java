@@ -0,0 +1,338 @@
+package zhgio.myss.runners;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.ColumnarRowGroup;
+import zhgio.myss.commons.DumpFormat;
+import zhgio.myss.commons.LoadDataEncoder;
+import zhgio.myss.commons.Metrics;
+import zhgio.myss.commons.RowBuffer;
+import zhgio.myss.contracts.RowWriter;
+import zhgio.myss.contracts.RowWriterFactory;
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.DdlWriter;
+import zhgio.myss.elements.DumpChunk;
+import zhgio.myss.elements.DumpManifest;
+import zhgio.myss.elements.DumpedTable;
+import zhgio.myss.elements.Table;
+
+/**
+ * Writes a portable dump directory instead of a live destination: the DDL of every table plus its rows split into
+ * independently gzipped chunks. Chunks are compressed on a shared pool (pigz style, every core works on its own chunk)
+ * and written through file channels; the manifest written on close lists everything for a table-parallel restore.
+ * In the columnar format the chunks are row groups of typed column vectors (see {@link ColumnarRowGroup}), encoded on
+ * the same pool and left uncompressed so the restore can read them in place.
+ */
+@Slf4j
+public class DumpArchive implements RowWriterFactory, AutoCloseable {
+
+	public static final String MANIFEST_FILE = "manifest.json";
+	private static final int INITIAL_BUFFER_BYTES = 64 * 1024; // short streams like subset lookups never grow to a full chunk
+
+	private final Path directory;
+	private final int chunkBytes;
+	private final int compressionLevel;
+	private final int rowGroupRows;
+	private final ExecutorService compressors;
+	private final Semaphore chunksInFlight; // bounds the memory held by chunks waiting for a compressor
+	private final DumpManifest manifest = new DumpManifest();
+	private final Map<String, DumpedTable> dumpedTables = new ConcurrentHashMap<>();
+	private final Map<String, AtomicInteger> chunkSequences = new ConcurrentHashMap<>();
+
+	public DumpArchive(Path directory, String schemaName, int compressionThreads, int chunkBytes, int compressionLevel) throws IOException {
+		this(directory, schemaName, DumpFormat.TSV, compressionThreads, chunkBytes, compressionLevel, 0);
+	}
+
+	/**
+	 * @param chunkBytes - uncompressed bytes of every TSV chunk, and the most values a COLUMNAR row group buffers
+	 * @param rowGroupRows - rows of every COLUMNAR row group
+	 */
+	public DumpArchive(Path directory, String schemaName, DumpFormat format, int compressionThreads, int chunkBytes, int compressionLevel, int rowGroupRows)
+			throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.chunkBytes = chunkBytes;
+		this.compressionLevel = compressionLevel;
+		this.rowGroupRows = rowGroupRows;
+		this.compressors = Executors.newFixedThreadPool(compressionThreads);
+		this.chunksInFlight = new Semaphore(compressionThreads * 2);
+		this.manifest.setSchemaName(schemaName);
+		this.manifest.setCreatedAt(System.currentTimeMillis());
+		this.manifest.setFormat(format);
+	}
+
+	/**
+	 * Writes the CREATE TABLE and the foreign key ALTER TABLE statements of every table.
+	 */
+	public void writeSchema(List<Table> tables) throws IOException {
+		DdlWriter ddlWriter = DdlWriter.local();
+		for (Table table : tables) {
+			DumpedTable dumpedTable = dumpedTable(table);
+			dumpedTable.setCreateFile(writeStatement(table, "create.sql", writer -> ddlWriter.writeCreateStatement(table, Collections.emptySet(), writer)));
+			if (table.getForeignKeys() != null && !table.getForeignKeys().isEmpty()) {
+				dumpedTable.setConstraintsFile(writeStatement(table, "constraints.sql", writer -> ddlWriter.writeAlterTableAddFkConstraintsStatement(table, table.getForeignKeys(), writer)));
+			}
+		}
+		log.info("Wrote the DDL of {} tables to {}", tables.size(), directory);
+	}
+
+	@Override
+	public RowWriter open(Table table) {
+		if (manifest.getFormat() == DumpFormat.COLUMNAR) {
+			return new RowGroupWriter(table, dumpedTable(table));
+		}
+		return new ChunkWriter(table, dumpedTable(table));
+	}
+
+	/**
+	 * Waits for the compressors and writes the manifest. Every RowWriter has to be closed before.
+	 */
+	@Override
+	public void close() throws IOException {
+		compressors.shutdown();
+		manifest.getTables().clear();
+		dumpedTables.values().stream().sorted(Comparator.comparing(DumpedTable::getTableName)).forEach(manifest.getTables()::add);
+		manifest.getTables().forEach(dumpedTable -> dumpedTable.getChunks().sort(Comparator.comparing(DumpChunk::getFile)));
+		new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(directory.resolve(MANIFEST_FILE).toFile(), manifest);
+		log.info("Wrote the manifest of {} tables to {}", manifest.getTables().size(), directory);
+	}
+
+	private DumpedTable dumpedTable(Table table) {
+		return dumpedTables.computeIfAbsent(table.getTableName(), tableName -> {
+			DumpedTable dumpedTable = new DumpedTable();
+			dumpedTable.setTableName(tableName);
+			dumpedTable.setColumns(table.getColumns().stream().map(Column::getColumnName).collect(Collectors.toList()));
+			return dumpedTable;
+		});
+	}
+
+	/**
+	 * Streams the statement straight into its file, nothing is kept on the table.
+	 */
+	private String writeStatement(Table table, String fileName, StatementSource statement) throws IOException {
+		Path tableDirectory = Files.createDirectories(directory.resolve(table.getTableName()));
+		try (Writer writer = Files.newBufferedWriter(tableDirectory.resolve(fileName), StandardCharsets.UTF_8)) {
+			statement.writeTo(writer);
+		}
+		return table.getTableName() + "/" + fileName;
+	}
+
+	private static void writeFile(Path path, ByteBuffer buffer) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Gzips a full chunk on the compression pool and writes it to its own file.
+	 */
+	private Future<?> submitChunk(DumpedTable dumpedTable, RowBuffer rows, long rowCount) throws InterruptedException {
+		Metrics.addBytes(rows.size());
+		return submitChunk(dumpedTable, "tsv.gz", rowCount, () -> {
+			RowBuffer compressed = new RowBuffer(rows.size() / 3 + 64);
+			try (GZIPOutputStream gzip = new LeveledGZIPOutputStream(compressed, compressionLevel)) {
+				rows.writeTo(gzip);
+			}
+			return compressed.toByteBuffer();
+		});
+	}
+
+	/**
+	 * Encodes a full row group on the compression pool and writes it to its own file.
+	 */
+	private Future<?> submitRowGroup(DumpedTable dumpedTable, ColumnarRowGroup rowGroup, List<Object[]> rows) throws InterruptedException {
+		return submitChunk(dumpedTable, "col", rows.size(), () -> {
+			ByteBuffer encoded = rowGroup.encode(rows);
+			Metrics.addBytes(encoded.remaining());
+			return encoded;
+		});
+	}
+
+	private Future<?> submitChunk(DumpedTable dumpedTable, String extension, long rowCount, ChunkEncoder encoder) throws InterruptedException {
+		int sequence = chunkSequences.computeIfAbsent(dumpedTable.getTableName(), tableName -> new AtomicInteger()).incrementAndGet();
+		String file = String.format("%s/data.%05d.%s", dumpedTable.getTableName(), sequence, extension);
+		chunksInFlight.acquire();
+		return compressors.submit(() -> {
+			try {
+				ByteBuffer encoded = encoder.encode();
+				int bytes = encoded.remaining();
+				Files.createDirectories(directory.resolve(dumpedTable.getTableName()));
+				writeFile(directory.resolve(file), encoded);
+				synchronized (dumpedTable) {
+					dumpedTable.getChunks().add(new DumpChunk(file, rowCount, bytes));
+				}
+				log.debug("Wrote chunk {} with {} rows, {} bytes", file, rowCount, bytes);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				chunksInFlight.release();
+			}
+		});
+	}
+
+	@FunctionalInterface
+	private interface StatementSource {
+		void writeTo(Writer writer) throws IOException;
+	}
+
+	@FunctionalInterface
+	private interface ChunkEncoder {
+		ByteBuffer encode() throws IOException;
+	}
+
+	private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+
+		LeveledGZIPOutputStream(RowBuffer out, int level) throws IOException {
+			super(out, 64 * 1024);
+			this.def.setLevel(level);
+		}
+	}
+
+	/**
+	 * Encodes one row stream into chunkBytes sized buffers, each handed to the compressors once full.
+	 */
+	private class ChunkWriter implements RowWriter {
+
+		private final DumpedTable dumpedTable;
+		private final LoadDataEncoder encoder;
+		private final List<Future<?>> pendingChunks = new ArrayList<>();
+		private RowBuffer buffer;
+		private long bufferedRows;
+
+		ChunkWriter(Table table, DumpedTable dumpedTable) {
+			this.dumpedTable = dumpedTable;
+			this.encoder = new LoadDataEncoder(table);
+			this.buffer = new RowBuffer(INITIAL_BUFFER_BYTES);
+		}
+
+		@Override
+		public void write(List<Object[]> rows) throws SQLException {
+			for (Object[] row : rows) {
+				encoder.encodeRow(row, buffer);
+				bufferedRows++;
+			}
+			if (buffer.size() >= chunkBytes) {
+				submitBuffer();
+				buffer = new RowBuffer(INITIAL_BUFFER_BYTES);
+			}
+		}
+
+		@Override
+		public void close() throws SQLException {
+			if (bufferedRows > 0) {
+				submitBuffer();
+			}
+			for (Future<?> chunk : pendingChunks) {
+				try {
+					chunk.get();
+				} catch (ExecutionException e) {
+					throw new SQLException("Writing a dump chunk of table " + dumpedTable.getTableName() + " failed", e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while writing dump chunks", e);
+				}
+			}
+		}
+
+		private void submitBuffer() throws SQLException {
+			try {
+				pendingChunks.add(submitChunk(dumpedTable, buffer, bufferedRows));
+				bufferedRows = 0;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while handing over a dump chunk", e);
+			}
+		}
+	}
+
+	/**
+	 * Collects one row stream into row groups of rowGroupRows rows, or fewer once their values take about chunkBytes,
+	 * each handed to the pool once full.
+	 */
+	private class RowGroupWriter implements RowWriter {
+
+		private static final int FIXED_VALUE_BYTES = 8; // numbers, dates and anything else not a string or a byte array
+
+		private final DumpedTable dumpedTable;
+		private final ColumnarRowGroup rowGroup;
+		private final List<Future<?>> pendingGroups = new ArrayList<>();
+		private List<Object[]> rows;
+		private long valueBytes; // estimated size of the buffered values
+
+		RowGroupWriter(Table table, DumpedTable dumpedTable) {
+			this.dumpedTable = dumpedTable;
+			this.rowGroup = new ColumnarRowGroup(table);
+			this.rows = new ArrayList<>();
+		}
+
+		@Override
+		public void write(List<Object[]> batch) throws SQLException {
+			for (Object[] row : batch) {
+				rows.add(row);
+				for (Object value : row) {
+					valueBytes += value instanceof byte[] ? ((byte[]) value).length : value instanceof String ? ((String) value).length() : FIXED_VALUE_BYTES;
+				}
+				if (rows.size() == rowGroupRows || valueBytes >= chunkBytes) {
+					submitRows();
+				}
+			}
+		}
+
+		@Override
+		public void close() throws SQLException {
+			if (!rows.isEmpty()) {
+				submitRows();
+			}
+			for (Future<?> group : pendingGroups) {
+				try {
+					group.get();
+				} catch (ExecutionException e) {
+					throw new SQLException("Writing a row group of table " + dumpedTable.getTableName() + " failed", e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while writing row groups", e);
+				}
+			}
+		}
+
+		private void submitRows() throws SQLException {
+			try {
+				pendingGroups.add(submitRowGroup(dumpedTable, rowGroup, rows));
+				rows = new ArrayList<>();
+				valueBytes = 0;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while handing over a row group", e);
+			}
+		}
+	}
+
+}
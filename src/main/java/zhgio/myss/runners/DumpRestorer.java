@@ -0,0 +1,161 @@
+package zhgio.myss.runners;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import javax.sql.DataSource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.ColumnarRowGroup;
+import zhgio.myss.commons.DumpFormat;
+import zhgio.myss.commons.Query;
+import zhgio.myss.commons.RowBuffer;
+import zhgio.myss.elements.DumpChunk;
+import zhgio.myss.elements.DumpManifest;
+import zhgio.myss.elements.DumpedTable;
+
+import static zhgio.myss.commons.Keyword.BACKTICK;
+
+/**
+ * Restores a dump directory written by {@link DumpArchive} into a destination schema.
+ * Creates every table, loads the tables in parallel (each on its own connection, chunk by chunk through
+ * LOAD DATA LOCAL streamed straight from the gzip files) and adds the foreign keys last.
+ * Columnar row groups are memory mapped and turned into LOAD DATA text right out of their vectors.
+ */
+@Slf4j
+public class DumpRestorer {
+
+	private static final int INITIAL_BUFFER_BYTES = 1024 * 1024;
+
+	private final Path directory;
+	private final DataSource destination;
+	private final int workers;
+
+	public DumpRestorer(Path directory, DataSource destination, int workers) {
+		this.directory = directory;
+		this.destination = destination;
+		this.workers = workers;
+	}
+
+	public void restore() throws IOException, SQLException {
+		DumpManifest manifest = new ObjectMapper().readValue(directory.resolve(DumpArchive.MANIFEST_FILE).toFile(), DumpManifest.class);
+		log.info("Restoring {} tables of schema {} from {}", manifest.getTables().size(), manifest.getSchemaName(), directory);
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			runForEveryTable(executor, manifest, table -> executeFile(table.getCreateFile()));
+			runForEveryTable(executor, manifest, table -> loadChunks(table, manifest.getFormat()));
+			runForEveryTable(executor, manifest, table -> executeFile(table.getConstraintsFile()));
+		} finally {
+			executor.shutdown();
+		}
+		log.info("Restored {} tables from {}", manifest.getTables().size(), directory);
+	}
+
+	private void loadChunks(DumpedTable table, DumpFormat format) throws IOException, SQLException {
+		String columnList = table.getColumns().stream().map(name -> BACKTICK + name + BACKTICK).collect(Collectors.joining(","));
+		String loadStatement = String.format(Query.QUERY_LOAD_DATA_LOCAL, table.getTableName(), columnList);
+		long rows = 0;
+		try (Connection connection = destination.getConnection()) {
+			execute(connection, "SET foreign_key_checks = 0");
+			try {
+				RowBuffer buffer = format == DumpFormat.COLUMNAR ? new RowBuffer(INITIAL_BUFFER_BYTES) : null;
+				for (DumpChunk chunk : table.getChunks()) {
+					if (buffer != null) {
+						rows += loadRowGroup(connection, loadStatement, directory.resolve(chunk.getFile()), buffer);
+						continue;
+					}
+					try (FileChannel channel = FileChannel.open(directory.resolve(chunk.getFile()));
+							InputStream stream = new GZIPInputStream(Channels.newInputStream(channel), 64 * 1024)) {
+						rows += LocalInfileRowWriter.loadStream(connection, loadStatement, stream);
+					}
+				}
+			} finally {
+				execute(connection, "SET foreign_key_checks = 1");
+			}
+		}
+		log.info("Loaded {} rows from {} chunks into table {}", rows, table.getChunks().size(), table.getTableName());
+	}
+
+	/**
+	 * The buffer is reused by every row group of the table, it grows to the text of the largest one.
+	 */
+	private int loadRowGroup(Connection connection, String loadStatement, Path file, RowBuffer buffer) throws IOException, SQLException {
+		try (FileChannel channel = FileChannel.open(file)) {
+			MappedByteBuffer rowGroup = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.reset();
+			int rows = ColumnarRowGroup.toLoadData(rowGroup, buffer);
+			int loaded = LocalInfileRowWriter.loadStream(connection, loadStatement, buffer.toInputStream());
+			if (loaded != rows) {
+				log.warn("LOAD DATA of row group {} loaded {} of {} rows", directory.relativize(file), loaded, rows);
+			}
+			return loaded;
+		}
+	}
+
+	private void executeFile(String file) throws IOException, SQLException {
+		if (file == null) {
+			return;
+		}
+		String statement = new String(Files.readAllBytes(directory.resolve(file)), StandardCharsets.UTF_8);
+		try (Connection connection = destination.getConnection()) {
+			execute(connection, statement);
+		}
+	}
+
+	private void execute(Connection connection, String sql) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	/**
+	 * Runs the step for every table on the pool and waits for all of them before the next step starts.
+	 */
+	private void runForEveryTable(ExecutorService executor, DumpManifest manifest, TableStep step) throws IOException, SQLException {
+		List<Future<?>> futures = new ArrayList<>();
+		for (DumpedTable table : manifest.getTables()) {
+			futures.add(executor.submit(() -> {
+				step.run(table);
+				return null;
+			}));
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while restoring", e);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface TableStep {
+		void run(DumpedTable table) throws IOException, SQLException;
+	}
+
+}
@@ -0,0 +1,131 @@
+package zhgio.myss.runners;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import zhgio.myss.contracts.RowWriter;
+import zhgio.myss.contracts.RowWriterFactory;
+import zhgio.myss.elements.Table;
+
+/**
+ * Hands every batch of one row stream to several destinations, each written by its own thread and writer over its own
+ * bounded queue. A batch is shared by all destinations, writers only read it. A slow destination fills its queue and
+ * blocks the caller, which throttles the origin reader behind it, so the buffered rows never exceed the queues.
+ * A failing destination fails the whole stream.
+ */
+public class FanOutRowWriter implements RowWriter {
+
+	private static final List<Object[]> END_OF_ROWS = new ArrayList<>(); // marks the end of the stream in every queue
+
+	private final List<BlockingQueue<List<Object[]>>> queues = new ArrayList<>();
+	private final List<Thread> writerThreads = new ArrayList<>();
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private final String tableName;
+
+	private FanOutRowWriter(Table table, List<RowWriterFactory> writerFactories, int queueCapacity) {
+		this.tableName = table.getTableName();
+		for (int i = 0; i < writerFactories.size(); i++) {
+			BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(queueCapacity);
+			RowWriterFactory writerFactory = writerFactories.get(i);
+			Thread writerThread = new Thread(() -> writeRows(table, writerFactory, queue), "myss-writer-" + table.getTableName() + "-" + i);
+			queues.add(queue);
+			writerThreads.add(writerThread);
+			writerThread.start();
+		}
+	}
+
+	/**
+	 * @param writerFactories - one per destination
+	 * @param queueCapacity - batches buffered for every destination
+	 */
+	public static RowWriterFactory factory(List<RowWriterFactory> writerFactories, int queueCapacity) {
+		return table -> new FanOutRowWriter(table, writerFactories, queueCapacity);
+	}
+
+	@Override
+	public void write(List<Object[]> rows) throws SQLException {
+		for (BlockingQueue<List<Object[]>> queue : queues) {
+			hand(queue, rows);
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Ends every stream and waits until each destination wrote and closed it.
+	 */
+	@Override
+	public void close() throws SQLException {
+		for (BlockingQueue<List<Object[]>> queue : queues) {
+			if (failure.get() != null) {
+				queue.clear(); // leftover batches are useless after a failure, and END_OF_ROWS needs the room
+			}
+			hand(queue, END_OF_ROWS);
+		}
+		for (Thread writerThread : writerThreads) {
+			try {
+				writerThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure.compareAndSet(null, e);
+			}
+		}
+		checkFailure();
+	}
+
+	private void writeRows(Table table, RowWriterFactory writerFactory, BlockingQueue<List<Object[]>> queue) {
+		try (RowWriter writer = writerFactory.open(table)) {
+			List<Object[]> batch;
+			while ((batch = queue.take()) != END_OF_ROWS) {
+				if (failure.get() == null) {
+					writer.write(batch);
+				}
+			}
+		} catch (SQLException | RuntimeException e) {
+			failure.compareAndSet(null, e);
+			queue.clear();
+			drain(queue);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure.compareAndSet(null, e);
+		}
+	}
+
+	/**
+	 * Keeps taking until the end of the stream, so the caller is never left blocked on a queue nobody reads.
+	 */
+	private void drain(BlockingQueue<List<Object[]>> queue) {
+		try {
+			while (queue.take() != END_OF_ROWS) {
+				// discarded, the stream failed
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void hand(BlockingQueue<List<Object[]>> queue, List<Object[]> batch) throws SQLException {
+		try {
+			while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) { // the destination is behind, waiting here is the backpressure on the reader
+				if (failure.get() != null) {
+					queue.clear(); // nothing queued gets written anymore, make room for the end of the stream
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while writing rows of table " + tableName, e);
+		}
+	}
+
+	private void checkFailure() throws SQLException {
+		if (failure.get() != null) {
+			throw failure.get() instanceof SQLException ? (SQLException) failure.get()
+					: new SQLException("Writing rows of table " + tableName + " to a destination failed", failure.get());
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+package zhgio.myss.runners;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.DataType;
+import zhgio.myss.commons.HighWaterMarks;
+import zhgio.myss.commons.Query;
+import zhgio.myss.commons.TableRules;
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.Table;
+import zhgio.myss.elements.TableRule;
+
+import static zhgio.myss.commons.Keyword.BACKTICK;
+
+/**
+ * Brings an existing destination copy up to date by copying only the rows past each table's high-water mark.
+ * The tracked column is the one configured in the rules file, else the updated column if the table has one, else
+ * the auto increment column. Auto increment marks only pick up new rows, updated column marks also pick up changes.
+ * Rows are upserted, so copying a row twice is harmless: the mark is read before the copy and rows written meanwhile
+ * come again on the next run. Tables without a tracking column, or without a mark yet, are truncated and copied in full.
+ * Deleted origin rows are never removed from the destination.
+ * The table rules apply as on a copy: structure-only tables are left alone, a rule's where narrows both the full and
+ * the incremental copies, and a table with a row limit is copied in full every time since its changed rows would grow
+ * past the limit.
+ */
+@Slf4j
+public class IncrementalRefresher {
+
+	private static final Set<DataType> INTEGER_TYPES = EnumSet.of(DataType.TINYINT, DataType.SMALLINT, DataType.INT, DataType.BIGINT);
+
+	private final JdbcTemplate originTemplate;
+	private final DataCopier dataCopier;
+	private final Schemer destinationSchemer;
+	private final HighWaterMarks highWaterMarks;
+	private final TableRules tableRules;
+	private final String updatedColumnName;
+
+	/**
+	 * @param dataCopier - has to write through an upserting writer
+	 * @param updatedColumnName - name of the last modification column, tracked in every table having it
+	 */
+	public IncrementalRefresher(DataSource origin, DataCopier dataCopier, Schemer destinationSchemer, HighWaterMarks highWaterMarks, TableRules tableRules,
+			String updatedColumnName) {
+		this.originTemplate = new JdbcTemplate(origin);
+		this.dataCopier = dataCopier;
+		this.destinationSchemer = destinationSchemer;
+		this.highWaterMarks = highWaterMarks;
+		this.tableRules = tableRules;
+		this.updatedColumnName = updatedColumnName;
+	}
+
+	/**
+	 * @return the number of copied rows
+	 */
+	public long refresh(List<Table> tables) throws SQLException, IOException {
+		long rows = 0;
+		int refreshed = 0;
+		for (Table table : tables) {
+			if (tableRules.isStructureOnly(table.getTableName())) {
+				log.debug("Table {} is structure only, not refreshing it", table.getTableName());
+				continue;
+			}
+			rows += refreshTable(table);
+			refreshed++;
+		}
+		log.info("Refreshed {} tables with {} rows", refreshed, rows);
+		return rows;
+	}
+
+	private long refreshTable(Table table) throws SQLException, IOException {
+		TableRule rule = tableRules.getRule(table.getTableName());
+		if (rule != null && rule.getRowLimit() > 0) {
+			log.info("Table {} is limited to {} rows, copying it in full", table.getTableName(), rule.getRowLimit());
+			return copyInFull(table, rule);
+		}
+		Column trackingColumn = getTrackingColumn(table, rule);
+		if (trackingColumn == null) {
+			log.info("Table {} has no column to track, copying it in full", table.getTableName());
+			return copyInFull(table, rule);
+		}
+
+		String newMark = originTemplate.queryForObject(String.format(Query.QUERY_HIGH_WATER_MARK, trackingColumn.getColumnName(), table.getTableName()),
+				(rs, rowNum) -> rs.getString("high_water_mark"));
+		String previousMark = highWaterMarks.get(table.getTableName(), trackingColumn.getColumnName());
+		long rows;
+		if (previousMark == null) {
+			log.info("No high-water mark on {}.{}, copying the table in full", table.getTableName(), trackingColumn.getColumnName());
+			rows = copyInFull(table, rule);
+		} else if (newMark == null || newMark.equals(previousMark) && trackingColumn.isAutoincrement()) {
+			log.debug("Table {} has no rows past {}", table.getTableName(), previousMark);
+			return 0;
+		} else {
+			rows = dataCopier.copyRows(table, changedRowsClause(trackingColumn, previousMark, rule == null ? null : rule.getWhere()));
+			log.info("Upserted {} rows of table {} past {} {}", rows, table.getTableName(), trackingColumn.getColumnName(), previousMark);
+		}
+		if (newMark != null) {
+			highWaterMarks.put(table.getTableName(), trackingColumn.getColumnName(), newMark);
+		}
+		return rows;
+	}
+
+	private long copyInFull(Table table, TableRule rule) throws SQLException {
+		destinationSchemer.truncateTable(table);
+		return rule == null ? dataCopier.copyTable(table) : dataCopier.copyRows(table, rule.toSelectClause());
+	}
+
+	/**
+	 * Auto increment values are never reused so the mark itself was copied already. An updated column can repeat
+	 * the mark's value for rows modified within the same tick, those rows are taken again.
+	 * @param where - the rule's condition, null for none
+	 */
+	private String changedRowsClause(Column trackingColumn, String mark, String where) {
+		String column = BACKTICK + trackingColumn.getColumnName() + BACKTICK;
+		String literal = INTEGER_TYPES.contains(trackingColumn.getType()) ? mark : "'" + StringUtils.replace(mark, "'", "''") + "'";
+		String condition = column + (trackingColumn.isAutoincrement() ? " > " : " >= ") + literal;
+		return "WHERE " + (where == null || where.isEmpty() ? condition : "(" + where + ") AND " + condition);
+	}
+
+	private Column getTrackingColumn(Table table, TableRule rule) {
+		String configuredColumn = rule == null ? null : rule.getWatermarkColumn();
+		if (configuredColumn != null) {
+			Column column = findColumn(table, configuredColumn);
+			if (column == null) {
+				log.warn("Table {} has no watermark column {}", table.getTableName(), configuredColumn);
+			}
+			return column;
+		}
+		Column updatedColumn = findColumn(table, updatedColumnName);
+		if (updatedColumn != null) {
+			return updatedColumn;
+		}
+		return table.getColumns().stream().filter(Column::isAutoincrement).filter(column -> INTEGER_TYPES.contains(column.getType())).findFirst().orElse(null);
+	}
+
+	private Column findColumn(Table table, String columnName) {
+		return table.getColumns().stream().filter(column -> column.getColumnName().equalsIgnoreCase(columnName)).findFirst().orElse(null);
+	}
+
+}
@@ -0,0 +1,63 @@
+package zhgio.myss.runners;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.Table;
+
+import static zhgio.myss.commons.Keyword.BACKTICK;
+
+/**
+ * Inserts every batch through one prepared statement.
+ * The destination url sets rewriteBatchedStatements so each executed batch goes out as multi-row INSERTs.
+ * In upsert mode rows already in the destination are overwritten instead of failing on their keys.
+ */
+public class InsertRowWriter extends DestinationRowWriter {
+
+	private final PreparedStatement statement;
+
+	public InsertRowWriter(DataSource destination, Table table) throws SQLException {
+		this(destination, table, false);
+	}
+
+	public InsertRowWriter(DataSource destination, Table table, boolean upsert) throws SQLException {
+		this(destination, table, upsert, false);
+	}
+
+	public InsertRowWriter(DataSource destination, Table table, boolean upsert, boolean bulkLoad) throws SQLException {
+		super(destination, table, bulkLoad);
+		String insert = "INSERT INTO " + BACKTICK + table.getTableName() + BACKTICK + " (" + columnList() + ") VALUES ("
+				+ table.getColumns().stream().map(column -> "?").collect(Collectors.joining(",")) + ")";
+		if (upsert) {
+			insert += " ON DUPLICATE KEY UPDATE " + table.getColumns().stream().map(Column::getColumnName)
+					.map(name -> BACKTICK + name + BACKTICK + "=VALUES(" + BACKTICK + name + BACKTICK + ")").collect(Collectors.joining(","));
+		}
+		this.statement = connection.prepareStatement(insert);
+	}
+
+	@Override
+	protected void load(List<Object[]> rows) throws SQLException {
+		for (Object[] row : rows) {
+			for (int i = 0; i < row.length; i++) {
+				statement.setObject(i + 1, row[i]);
+			}
+			statement.addBatch();
+		}
+		statement.executeBatch();
+	}
+
+	@Override
+	public void close() throws SQLException {
+		try {
+			statement.close();
+		} finally {
+			super.close();
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package zhgio.myss.runners;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.LoadDataEncoder;
+import zhgio.myss.commons.Metrics;
+import zhgio.myss.commons.Query;
+import zhgio.myss.commons.RowBuffer;
+import zhgio.myss.elements.Table;
+
+/**
+ * Loads rows with LOAD DATA LOCAL INFILE. Rows are encoded into an in-memory buffer which is handed to the driver
+ * as the local infile stream once it reaches flushBytes, so nothing touches the disk.
+ * Needs allowLoadLocalInfile on the destination url and local_infile enabled on the server.
+ */
+@Slf4j
+public class LocalInfileRowWriter extends DestinationRowWriter {
+
+	private final LoadDataEncoder encoder;
+	private final RowBuffer buffer;
+	private final int flushBytes;
+	private final String loadStatement;
+	private long bufferedRows;
+
+	public LocalInfileRowWriter(DataSource destination, Table table, int flushBytes) throws SQLException {
+		this(destination, table, flushBytes, false);
+	}
+
+	public LocalInfileRowWriter(DataSource destination, Table table, int flushBytes, boolean bulkLoad) throws SQLException {
+		super(destination, table, bulkLoad);
+		this.encoder = new LoadDataEncoder(table);
+		this.buffer = new RowBuffer(flushBytes + flushBytes / 4);
+		this.flushBytes = flushBytes;
+		this.loadStatement = String.format(Query.QUERY_LOAD_DATA_LOCAL, table.getTableName(), columnList());
+	}
+
+	@Override
+	protected void load(List<Object[]> rows) throws SQLException {
+		for (Object[] row : rows) {
+			encoder.encodeRow(row, buffer);
+			bufferedRows++;
+		}
+		if (buffer.size() >= flushBytes) {
+			flush();
+		}
+	}
+
+	private void flush() throws SQLException {
+		if (bufferedRows == 0) {
+			return;
+		}
+		try {
+			int loaded = loadStream(connection, loadStatement, buffer.toInputStream());
+			Metrics.addBytes(buffer.size());
+			if (loaded != bufferedRows) { // LOCAL turns data errors into warnings, make them visible at least
+				log.warn("LOAD DATA into table {} loaded {} of {} rows", table.getTableName(), loaded, bufferedRows);
+			}
+		} finally {
+			buffer.reset();
+			bufferedRows = 0;
+		}
+	}
+
+	/**
+	 * Runs the LOAD DATA LOCAL statement with the stream as its file content.
+	 * @return the number of loaded rows
+	 */
+	public static int loadStream(Connection connection, String loadStatement, InputStream stream) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.unwrap(com.mysql.jdbc.Statement.class).setLocalInfileInputStream(stream);
+			statement.execute(loadStatement);
+			return statement.getUpdateCount();
+		}
+	}
+
+	@Override
+	public void close() throws SQLException {
+		try {
+			if (!failed) {
+				flush();
+				connection.commit();
+			}
+		} finally {
+			super.close();
+		}
+	}
+
+}
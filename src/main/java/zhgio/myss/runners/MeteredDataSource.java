@@ -0,0 +1,31 @@
+package zhgio.myss.runners;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import zhgio.myss.commons.Metrics;
+
+/**
+ * Records how long every caller waits to get a connection, which shows when the pool is too small for the workers.
+ */
+public class MeteredDataSource extends DelegatingDataSource {
+
+	public MeteredDataSource(DataSource targetDataSource) {
+		super(targetDataSource);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		try {
+			return super.getConnection();
+		} finally {
+			Metrics.recordLatency(Metrics.CONNECTION_WAIT, start);
+		}
+	}
+
+}
@@ -0,0 +1,21 @@
+package zhgio.myss.runners;
+
+import java.util.Map;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import zhgio.myss.commons.Metrics;
+
+/**
+ * Live view of the running job's metrics, served by the embedded web server while the runner works.
+ */
+@RestController
+public class MetricsEndpoint {
+
+	@GetMapping("/myss/metrics")
+	public Map<String, Object> metrics() {
+		return Metrics.snapshot();
+	}
+
+}
@@ -0,0 +1,194 @@
+package zhgio.myss.runners;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.Query;
+import zhgio.myss.commons.RunMode;
+import zhgio.myss.commons.Settings;
+import zhgio.myss.commons.TableRules;
+import zhgio.myss.elements.Table;
+
+import static zhgio.myss.MySqlShrinkerApplication.BULK_INTROSPECTION;
+import static zhgio.myss.MySqlShrinkerApplication.COPY_WORKERS;
+import static zhgio.myss.MySqlShrinkerApplication.COUNT_WORKERS;
+import static zhgio.myss.MySqlShrinkerApplication.DB_DRIVER;
+import static zhgio.myss.MySqlShrinkerApplication.DDL_WORKERS;
+import static zhgio.myss.MySqlShrinkerApplication.DESTINATION_CONNECTION_BUDGET;
+import static zhgio.myss.MySqlShrinkerApplication.INDEX_WORKERS;
+import static zhgio.myss.MySqlShrinkerApplication.INTROSPECTION_WORKERS;
+import static zhgio.myss.MySqlShrinkerApplication.ORIGIN_CONNECTION_BUDGET;
+import static zhgio.myss.MySqlShrinkerApplication.SCHEMA_WORKERS;
+
+/**
+ * Clones many origin schemas of identical structure, e.g. one per tenant, each into its own destination schema.
+ * The first schema is introspected once and its model is reused by every schema whose structure fingerprints match,
+ * the others are introspected on their own. All schemas share one connection pool per server, sized by the connection
+ * budget, and run concurrently as far as the budgets can serve every running schema at its peak.
+ */
+@Slf4j
+public class MultiSchemaRunner {
+
+	private static final String SCHEMA_PLACEHOLDER = "{schema}";
+
+	private final Settings settings;
+	private final TableRules tableRules; // the schema runners load their own, for the copy
+
+	public MultiSchemaRunner(Settings settings) {
+		this.settings = settings;
+		this.tableRules = TableRules.load(settings.getRulesFile());
+	}
+
+	public void run() throws SQLException, IOException {
+		if (settings.getRunMode() != RunMode.CLONE && settings.getRunMode() != RunMode.DIFF) {
+			throw new IllegalStateException("Multi-schema runs clone or diff, " + settings.getRunMode() + " works on a single schema");
+		}
+		if (!settings.getDestinationSchema().contains(SCHEMA_PLACEHOLDER)) {
+			throw new IllegalStateException("The destination schema of a multi-schema run needs " + SCHEMA_PLACEHOLDER + " in its name, got " + settings.getDestinationSchema());
+		}
+		int schemaWorkers = getSchemaWorkers();
+		HikariDataSource originPool = pool(settings.getOriginUrl() + MySSRunner.ORIGIN_URL_PARAMETERS, settings.getOriginUsername(), settings.getOriginPassword(),
+				ORIGIN_CONNECTION_BUDGET);
+		HikariDataSource destinationPool = pool(settings.getDestinationUrl() + MySSRunner.DESTINATION_URL_PARAMETERS, settings.getDestinationUsername(),
+				settings.getDestinationPassword(), DESTINATION_CONNECTION_BUDGET);
+		ExecutorService executor = Executors.newFixedThreadPool(schemaWorkers);
+		try {
+			DataSource origin = new MeteredDataSource(originPool);
+			DataSource destination = new MeteredDataSource(destinationPool);
+			List<String> schemas = resolveSchemas(origin);
+			if (schemas.isEmpty()) {
+				log.warn("No origin schema matches {}", settings.getOriginSchemas());
+				return;
+			}
+			long start = System.nanoTime();
+			String templateSchema = schemas.get(0);
+			Schemer templateSchemer = new Schemer(new SchemaDataSource(origin, templateSchema), tableRules::isSelected);
+			List<Table> model = introspect(templateSchemer, templateSchema);
+			tableRules.dropForeignKeysToUnselected(model);
+			Map<String, String> structure = templateSchemer.getTableStructureFingerprints(templateSchema);
+			log.info("Running {} schemas, {} at a time, with the model of {} tables introspected from {}", schemas.size(), schemaWorkers, model.size(), templateSchema);
+
+			Map<String, Future<?>> futures = new LinkedHashMap<>();
+			for (String schema : schemas) {
+				futures.put(schema, executor.submit(() -> runSchema(schema, origin, destination, model, structure)));
+			}
+			List<String> failedSchemas = new ArrayList<>();
+			List<Throwable> failures = new ArrayList<>();
+			for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+				try {
+					entry.getValue().get();
+				} catch (ExecutionException e) {
+					log.error("Schema {} failed", entry.getKey(), e.getCause());
+					failedSchemas.add(entry.getKey());
+					failures.add(e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while running schemas", e);
+				}
+			}
+			log.info("Ran {} of {} schemas in {} s", schemas.size() - failedSchemas.size(), schemas.size(), TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+			if (!failedSchemas.isEmpty()) {
+				SQLException failure = new SQLException("Failed schemas, run them again: " + String.join(",", failedSchemas));
+				failures.forEach(failure::addSuppressed);
+				throw failure;
+			}
+		} finally {
+			executor.shutdownNow();
+			originPool.close();
+			destinationPool.close();
+		}
+	}
+
+	private Void runSchema(String schema, DataSource origin, DataSource destination, List<Table> model, Map<String, String> structure) throws SQLException, IOException {
+		String destinationSchema = settings.getDestinationSchema().replace(SCHEMA_PLACEHOLDER, schema);
+		DataSource schemaOrigin = new SchemaDataSource(origin, schema);
+		boolean sameStructure = new Schemer(schemaOrigin, tableRules::isSelected).getTableStructureFingerprints(schema).equals(structure);
+		if (!sameStructure) {
+			log.warn("Schema {} differs from the shared model, introspecting it on its own", schema);
+		}
+		if (!settings.isDryRun()) {
+			new JdbcTemplate(destination).execute(String.format(Query.QUERY_CREATE_SCHEMA, destinationSchema));
+		}
+		log.info("Running schema {} into {}", schema, destinationSchema);
+		new MySSRunner(settings.forSchema(schema, destinationSchema), schemaOrigin, new SchemaDataSource(destination, destinationSchema), sameStructure ? model : null)
+				.runSchema();
+		return null;
+	}
+
+	/**
+	 * @return the schemas named in the settings, LIKE patterns expanded, in order and without duplicates
+	 */
+	private List<String> resolveSchemas(DataSource origin) {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(origin);
+		Set<String> schemas = new LinkedHashSet<>();
+		for (String name : settings.getOriginSchemas().split(",")) {
+			String trimmed = name.trim();
+			if (trimmed.contains("%")) {
+				schemas.addAll(jdbcTemplate.queryForList(Query.QUERY_SCHEMAS_LIKE, String.class, trimmed));
+			} else if (!trimmed.isEmpty()) {
+				schemas.add(trimmed);
+			}
+		}
+		return new ArrayList<>(schemas);
+	}
+
+	private static List<Table> introspect(Schemer schemer, String schema) throws SQLException {
+		if (BULK_INTROSPECTION) {
+			return schemer.getAllTablesFromInformationSchema(schema);
+		}
+		List<Table> tables = schemer.getAllTablesFromSchema(schema);
+		for (Table table : tables) {
+			schemer.introspectTable(table);
+		}
+		return tables;
+	}
+
+	/**
+	 * A schema may need all of its worker connections at once. Running only as many schemas as the budgets can serve
+	 * at their peak keeps two schemas from each holding part of the connections the other one waits for.
+	 */
+	static int getSchemaWorkers() {
+		int originPeak = Math.max(Math.max(COPY_WORKERS, COUNT_WORKERS), INTROSPECTION_WORKERS) + 1; // workers plus the runner's own queries
+		int destinationPeak = Math.max(Math.max(DDL_WORKERS, COPY_WORKERS), INDEX_WORKERS) + 1;
+		if (ORIGIN_CONNECTION_BUDGET < originPeak || DESTINATION_CONNECTION_BUDGET < destinationPeak) {
+			throw new IllegalStateException("Connection budgets of " + ORIGIN_CONNECTION_BUDGET + " origin and " + DESTINATION_CONNECTION_BUDGET
+					+ " destination connections cannot serve one schema, it needs up to " + originPeak + " and " + destinationPeak);
+		}
+		int workers = Math.min(SCHEMA_WORKERS, Math.min(ORIGIN_CONNECTION_BUDGET / originPeak, DESTINATION_CONNECTION_BUDGET / destinationPeak));
+		if (workers < SCHEMA_WORKERS) {
+			log.warn("Running {} schemas at a time instead of {}, the connection budgets serve no more", workers, SCHEMA_WORKERS);
+		}
+		return workers;
+	}
+
+	/**
+	 * Callers wait for a connection as long as it takes, waiting on the budget is the point of it.
+	 */
+	private static HikariDataSource pool(String url, String username, String password, int size) {
+		HikariDataSource pool = DataSourceBuilder.create().type(HikariDataSource.class).url(url).username(username).password(password).driverClassName(DB_DRIVER).build();
+		pool.setMaximumPoolSize(size);
+		pool.setMinimumIdle(0);
+		pool.setConnectionTimeout(TimeUnit.HOURS.toMillis(1));
+		return pool;
+	}
+
+}
@@ -1,112 +1,551 @@
 package zhgio.myss.runners;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import lombok.extern.slf4j.Slf4j;
-import zhgio.myss.MySqlShrinkerApplication;
-import zhgio.myss.elements.Column;
+import zhgio.myss.commons.HighWaterMarks;
+import zhgio.myss.commons.MaskingRules;
+import zhgio.myss.commons.Metrics;
+import zhgio.myss.commons.ProgressJournal;
+import zhgio.myss.commons.RowCountCache;
+import zhgio.myss.commons.RunMode;
+import zhgio.myss.commons.SchemaCache;
+import zhgio.myss.commons.Settings;
+import zhgio.myss.commons.TableRules;
+import zhgio.myss.commons.WriteMode;
+import zhgio.myss.contracts.RowWriterFactory;
 import zhgio.myss.elements.Index;
-import zhgio.myss.elements.Key;
+import zhgio.myss.elements.RunPlan;
+import zhgio.myss.elements.SchemaDiff;
 import zhgio.myss.elements.Table;
 
+import static zhgio.myss.MySqlShrinkerApplication.BULK_INTROSPECTION;
+import static zhgio.myss.MySqlShrinkerApplication.COPY_BATCH_SIZE;
+import static zhgio.myss.MySqlShrinkerApplication.COPY_CHUNK_ROWS;
+import static zhgio.myss.MySqlShrinkerApplication.COPY_QUEUE_CAPACITY;
+import static zhgio.myss.MySqlShrinkerApplication.COPY_WORKERS;
+import static zhgio.myss.MySqlShrinkerApplication.COUNT_CACHE_MAX_AGE_MINUTES;
+import static zhgio.myss.MySqlShrinkerApplication.COUNT_RANGE_ROWS;
+import static zhgio.myss.MySqlShrinkerApplication.COUNT_WORKERS;
 import static zhgio.myss.MySqlShrinkerApplication.DB_DRIVER;
-import static zhgio.myss.MySqlShrinkerApplication.DESTINATION_PASSWORD;
-import static zhgio.myss.MySqlShrinkerApplication.DESTINATION_SCHEMA_NAME;
-import static zhgio.myss.MySqlShrinkerApplication.DESTINATION_SCHEMA_URL;
-import static zhgio.myss.MySqlShrinkerApplication.DESTINATION_USERNAME;
-import static zhgio.myss.MySqlShrinkerApplication.ORIGIN_SCHEMA_NAME;
-import static zhgio.myss.MySqlShrinkerApplication.ORIGIN_SCHEMA_URL;
+import static zhgio.myss.MySqlShrinkerApplication.DDL_PIPELINE;
+import static zhgio.myss.MySqlShrinkerApplication.DDL_PIPELINE_QUEUE_CAPACITY;
+import static zhgio.myss.MySqlShrinkerApplication.DDL_WORKERS;
+import static zhgio.myss.MySqlShrinkerApplication.DUMP_CHUNK_BYTES;
+import static zhgio.myss.MySqlShrinkerApplication.DUMP_COMPRESSION_LEVEL;
+import static zhgio.myss.MySqlShrinkerApplication.DUMP_COMPRESSION_THREADS;
+import static zhgio.myss.MySqlShrinkerApplication.DUMP_ROW_GROUP_ROWS;
+import static zhgio.myss.MySqlShrinkerApplication.HIGH_WATER_MARKS_FILE;
+import static zhgio.myss.MySqlShrinkerApplication.INDEX_WORKERS;
+import static zhgio.myss.MySqlShrinkerApplication.INTROSPECTION_WORKERS;
+import static zhgio.myss.MySqlShrinkerApplication.JOURNAL_SYNC_INTERVAL;
+import static zhgio.myss.MySqlShrinkerApplication.LOAD_DATA_FLUSH_BYTES;
+import static zhgio.myss.MySqlShrinkerApplication.METRICS_REPORT_FILE;
+import static zhgio.myss.MySqlShrinkerApplication.PLAN_ROW_COST_BYTES;
+import static zhgio.myss.MySqlShrinkerApplication.PROGRESS_JOURNAL;
+import static zhgio.myss.MySqlShrinkerApplication.REFRESH_UPDATED_COLUMN;
+import static zhgio.myss.MySqlShrinkerApplication.RESTORE_WORKERS;
+import static zhgio.myss.MySqlShrinkerApplication.SCHEMA_CACHE;
+import static zhgio.myss.MySqlShrinkerApplication.SCHEMA_CACHE_DIRECTORY;
+import static zhgio.myss.MySqlShrinkerApplication.SUBSET_LOOKUP_BATCH_SIZE;
 
 @Configuration
 @Slf4j
 public class MySSRunner implements CommandLineRunner {
 
+	static final String ORIGIN_URL_PARAMETERS = "?useSSL=false&zeroDateTimeBehavior=round";
+	static final String DESTINATION_URL_PARAMETERS = "?useSSL=false&rewriteBatchedStatements=true&allowLoadLocalInfile=true";
+
+	private final Settings settings;
+	// built once, the headless launcher calls the getters directly instead of going through the bean registry
+	private DataSource dataSourceOrigin;
+	private DataSource dataSourceDestination;
+	private List<DataSource> fanOutDestinations;
+	private MaskingRules maskingRules;
+	private TableRules tableRules;
+	private final boolean oneOfMany; // a schema of a multi-schema run, its files are kept apart from the other schemas'
+	private final List<Table> sharedModel; // introspected once for all schemas of identical structure
+
+	@Autowired
+	public MySSRunner(ApplicationArguments arguments) {
+		this(Settings.load(arguments.getSourceArgs()));
+	}
+
+	public MySSRunner(Settings settings) {
+		this.settings = settings;
+		this.oneOfMany = false;
+		this.sharedModel = null;
+		log.info("Running with {}", settings);
+	}
+
+	/**
+	 * One schema of a multi-schema run, on connections from the pools shared by all of them.
+	 * @param sharedModel - the tables of a schema with the same structure, null introspects this schema
+	 */
+	MySSRunner(Settings settings, DataSource origin, DataSource destination, List<Table> sharedModel) {
+		this.settings = settings;
+		this.dataSourceOrigin = origin;
+		this.dataSourceDestination = destination;
+		this.oneOfMany = true;
+		this.sharedModel = sharedModel;
+	}
+
+	/**
+	 * @throws SQLException or IOException when the run failed, after the metrics report is written
+	 */
 	@Override
-	public void run(String... args) {
+	public void run(String... args) throws SQLException, IOException {
 
 		log.info("MySQLShrinker application runner starting!");
+		Metrics.reset();
+		try {
+			if (settings.isMultiSchema()) {
+				new MultiSchemaRunner(settings).run();
+			} else {
+				runSchema();
+			}
+		} catch (SQLException | IOException e) {
+			log.error("Aborted the run", e);
+			throw e;
+		} finally {
+			writeMetricsReport();
+		}
+	}
+
+	void runSchema() throws SQLException, IOException {
+		switch (settings.getRunMode()) {
+		case DUMP:
+			dumpSchema();
+			break;
+		case RESTORE:
+			long start = System.nanoTime();
+			new DumpRestorer(Paths.get(settings.getDumpDirectory()), getDataSourceDestination(), RESTORE_WORKERS).restore();
+			Metrics.recordPhase(Metrics.COPY, start);
+			break;
+		case REFRESH:
+			refreshSchema();
+			break;
+		case DIFF:
+			diffSchema();
+			break;
+		default:
+			cloneSchema();
+		}
+	}
+
+	private void writeMetricsReport() {
 		try {
-			Schemer originSchemer = new Schemer(getDataSourceOrigin());
+			Metrics.writeReport(Paths.get(METRICS_REPORT_FILE));
+		} catch (IOException e) {
+			log.error("Could not write the metrics report: {}", e.getMessage());
+		}
+	}
+
+	private void cloneSchema() throws SQLException, IOException {
+		Schemer originSchemer = newOriginSchemer();
+		boolean deferIndices = settings.isDeferIndices() && (settings.isCopyData() || settings.isShrinkData());
+		if (DDL_PIPELINE && !BULK_INTROSPECTION && sharedModel == null && !settings.isDryRun()) {
+			cloneSchemaPipelined(originSchemer, deferIndices);
+			return;
+		}
+		List<Table> tables = introspect(originSchemer);
+		RunPlan plan = planRun(originSchemer, tables);
+		if (settings.isDryRun()) {
+			return;
+		}
+
+		try (ProgressJournal journal = new ProgressJournal(getProgressJournalPath(), JOURNAL_SYNC_INTERVAL)) {
 			Schemer destinationSchemer = new Schemer(getDataSourceDestination());
-			List<Table> tables = originSchemer.getAllTablesFromSchema(ORIGIN_SCHEMA_NAME);
+			if (DDL_WORKERS > 1) {
+				new DdlScheduler(getDataSourceDestination(), DDL_WORKERS, journal).createTables(tables, deferIndices);
+			} else {
+				long start = System.nanoTime();
+				cloneTables(destinationSchemer, tables, journal, deferIndices);
+				Metrics.recordPhase(Metrics.DDL, start);
+				start = System.nanoTime();
+				addConstraints(destinationSchemer, tables, journal);
+				Metrics.recordPhase(Metrics.CONSTRAINTS, start);
+			}
+			createTablesOnFanOutDestinations(tables, journal, deferIndices);
+			loadData(plan, journal, deferIndices);
+			journal.finish();
+		}
+	}
+
+	/**
+	 * Runs introspection, DDL writing and DDL execution as concurrent stages instead of one after the other, the table
+	 * models are only complete once the pipeline drained so the copy is planned afterwards. The schema cache is not
+	 * used, every table is introspected again.
+	 */
+	private void cloneSchemaPipelined(Schemer originSchemer, boolean deferIndices) throws SQLException, IOException {
+		List<Table> tables = originSchemer.getAllTablesFromSchema(settings.getOriginSchema());
+		try (ProgressJournal journal = new ProgressJournal(getProgressJournalPath(), JOURNAL_SYNC_INTERVAL)) {
+			long start = System.nanoTime();
+			new DdlPipeline(getDataSourceOrigin(), getDataSourceDestination(), INTROSPECTION_WORKERS, DDL_WORKERS, DDL_PIPELINE_QUEUE_CAPACITY, journal,
+					getTableRules()).run(tables, deferIndices);
+			Metrics.recordPhase(Metrics.DDL, start);
+			createTablesOnFanOutDestinations(tables, journal, deferIndices);
+			RunPlan plan = planRun(originSchemer, tables);
+			loadData(plan, journal, deferIndices);
+			journal.finish();
+		}
+	}
 
-			cloneTables(originSchemer, destinationSchemer, tables);
-			addConstraints(originSchemer, destinationSchemer, tables);
-			setTableSizesAndPrintSorted(originSchemer, tables);
+	/**
+	 * The statements are journaled for the main destination only, a fan-out destination journals its DDL as a whole.
+	 * A run cut short in the middle of it reruns all of it: the tables are created if not there, the constraints that
+	 * already are fail the run and have to be dropped by hand.
+	 */
+	private void createTablesOnFanOutDestinations(List<Table> tables, ProgressJournal journal, boolean deferIndices) throws SQLException, IOException {
+		for (int i = 0; i < getFanOutDestinations().size(); i++) {
+			if (journal.isDone(ProgressJournal.fanOutKey("ddl", i))) {
+				continue;
+			}
+			long start = System.nanoTime();
+			new DdlScheduler(getFanOutDestinations().get(i), DDL_WORKERS).createTables(tables, deferIndices);
+			Metrics.recordPhase(Metrics.DDL, start);
+			journal.markDone(ProgressJournal.fanOutKey("ddl", i));
+		}
+	}
 
-		} catch (SQLException e) {
-			log.error("Aborted everything in the Runner#run method.");
+	/**
+	 * Copies the rows into the created tables of every destination and builds the indices left out of them.
+	 */
+	private void loadData(RunPlan plan, ProgressJournal journal, boolean deferIndices) throws SQLException, IOException {
+		long loadStart = System.nanoTime();
+		List<Schemer> destinationSchemers = new ArrayList<>();
+		destinationSchemers.add(new Schemer(getDataSourceDestination()));
+		for (DataSource fanOutDestination : getFanOutDestinations()) {
+			destinationSchemers.add(new Schemer(fanOutDestination));
+		}
+		transferData(plan, getRowWriterFactory(deferIndices), journal, destinationSchemers);
+		if (deferIndices) {
+			long indicesStart = System.nanoTime();
+			new DdlScheduler(getDataSourceDestination(), INDEX_WORKERS, journal).addIndices(plan.getTables());
+			for (int i = 0; i < getFanOutDestinations().size(); i++) {
+				if (!journal.isDone(ProgressJournal.fanOutKey("indices", i))) {
+					new DdlScheduler(getFanOutDestinations().get(i), INDEX_WORKERS).addIndices(plan.getTables());
+					journal.markDone(ProgressJournal.fanOutKey("indices", i));
+				}
+			}
+			Metrics.recordPhase(Metrics.INDICES, indicesStart);
+			log.info("Loaded the data in {} ms, built the indices in {} ms", TimeUnit.NANOSECONDS.toMillis(indicesStart - loadStart),
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - indicesStart));
+		}
+	}
+
+	private void dumpSchema() throws SQLException, IOException {
+		Schemer originSchemer = newOriginSchemer();
+		List<Table> tables = introspect(originSchemer);
+		RunPlan plan = planRun(originSchemer, tables);
+		if (settings.isDryRun()) {
+			return;
+		}
+		try (DumpArchive dumpArchive = new DumpArchive(Paths.get(settings.getDumpDirectory()), settings.getOriginSchema(), settings.getDumpFormat(),
+				DUMP_COMPRESSION_THREADS, DUMP_CHUNK_BYTES, DUMP_COMPRESSION_LEVEL, DUMP_ROW_GROUP_ROWS)) {
+			dumpArchive.writeSchema(tables);
+			transferData(plan, dumpArchive, null, Collections.emptyList());
 		}
 	}
 
-	private void setTableSizesAndPrintSorted(Schemer originSchemer, List<Table> tables) {
-		tables.forEach(table -> setTableSizes(originSchemer, table));
-		tables.sort(Collections.reverseOrder(Comparator.comparingLong(Table::getNumberOfRowsApprox)));
-		log.info("SORTING BY ROWS APPROX: ");
-		tables.forEach(table -> log.info("table: {} | num of rows approx: {} | size in mb: {}", table.getTableName(), table.getNumberOfRowsApprox(), table.getTableSizeInMb()));
+	/**
+	 * Upserts the rows changed since the previous refresh, the destination tables have to exist already.
+	 */
+	private void refreshSchema() throws SQLException, IOException {
+		List<Table> tables = introspect(newOriginSchemer());
+		getMaskingRules().validate(tables);
+		DataSource destination = getDataSourceDestination();
+		DataCopier dataCopier = newDataCopier(table -> new InsertRowWriter(destination, table, true));
+		long start = System.nanoTime();
+		new IncrementalRefresher(getDataSourceOrigin(), dataCopier, new Schemer(destination), HighWaterMarks.load(HIGH_WATER_MARKS_FILE), getTableRules(),
+				REFRESH_UPDATED_COLUMN).refresh(tables);
+		Metrics.recordPhase(Metrics.COPY, start);
+	}
+
+	/**
+	 * Introspects both schemas the same way and runs only the DDL the destination misses, in a dry run it is printed only.
+	 */
+	private void diffSchema() throws SQLException, IOException {
+		List<Table> originTables = introspect(newOriginSchemer());
+		// tables left out of the origin are left out of the destination too, rather than reported as destination only
+		Schemer destinationSchemer = new Schemer(getDataSourceDestination(), getTableRules()::isSelected);
+		long start = System.nanoTime();
+		SchemaDiff diff = SchemaDiff.compare(originTables, destinationSchemer.getAllTablesFromInformationSchema(settings.getDestinationSchema()));
+		Metrics.recordPhase(Metrics.PLANNING, start);
+		diff.print();
+		if (settings.isDryRun() || diff.isEmpty()) {
+			return;
+		}
+		start = System.nanoTime();
+		diff.getDropConstraintStatements().forEach(destinationSchemer::executeStatement);
+		diff.getStructureStatements().forEach(destinationSchemer::executeStatement);
+		Metrics.recordPhase(Metrics.DDL, start);
+		start = System.nanoTime();
+		diff.getAddConstraintStatements().forEach(destinationSchemer::executeStatement);
+		Metrics.recordPhase(Metrics.CONSTRAINTS, start);
+	}
+
+	/**
+	 * Fetches fresh sizes and row counts of all tables in one query and plans the copy out of them.
+	 * With exact counts on, the rows are counted before planning. The plan is printed, with a dry run that is all the run does.
+	 */
+	private RunPlan planRun(Schemer originSchemer, List<Table> tables) throws SQLException, IOException {
+		long start = System.nanoTime();
+		originSchemer.refreshTableStatistics(settings.getOriginSchema(), tables);
+		if (settings.isExactCounts()) {
+			RowCountCache countCache = RowCountCache.load(Paths.get("myss-counts-" + settings.getOriginSchema() + ".properties"),
+					TimeUnit.MINUTES.toMillis(COUNT_CACHE_MAX_AGE_MINUTES));
+			new RowCounter(getDataSourceOrigin(), COUNT_WORKERS, COUNT_RANGE_ROWS, countCache).count(tables);
+		}
+		RunPlan plan = new RunPlanner(COPY_WORKERS, COPY_CHUNK_ROWS, PLAN_ROW_COST_BYTES, getTableRules()).plan(tables);
+		getMaskingRules().validate(tables);
+		Metrics.recordPhase(Metrics.PLANNING, start);
+		plan.print();
+		if (settings.isDryRun()) {
+			log.info("Dry run, nothing was written to {}", settings.getRunMode() == RunMode.DUMP ? settings.getDumpDirectory() : settings.getDestinationSchema());
+		}
+		return plan;
+	}
+
+	private Path getProgressJournalPath() {
+		return Paths.get(oneOfMany ? PROGRESS_JOURNAL.replace(".journal", "-" + settings.getOriginSchema() + ".journal") : PROGRESS_JOURNAL);
+	}
+
+	private List<Table> introspect(Schemer originSchemer) throws SQLException, IOException {
+		long start = System.nanoTime();
+		List<Table> tables;
+		if (sharedModel != null) { // its foreign keys were already checked against the table rules
+			tables = sharedModel.stream().map(table -> table.copyFor(settings.getOriginSchema())).collect(Collectors.toList());
+		} else {
+			tables = introspectWithCache(originSchemer);
+			getTableRules().dropForeignKeysToUnselected(tables);
+		}
+		Metrics.recordPhase(Metrics.INTROSPECTION, start);
+		return tables;
+	}
 
-		log.info("SORTING BY MB WEIGHT: ");
-		tables.sort(Collections.reverseOrder(Comparator.comparing(table -> table.getTableSizeInMb().intValue())));
-		tables.forEach(table -> log.info("table: {} | num of rows approx: {} | size in mb: {}", table.getTableName(), table.getNumberOfRowsApprox(), table.getTableSizeInMb()));
+	private List<Table> introspectWithCache(Schemer originSchemer) throws SQLException, IOException {
+		if (!SCHEMA_CACHE) {
+			return introspectAll(originSchemer);
+		}
+		SchemaCache schemaCache = new SchemaCache(Paths.get(SCHEMA_CACHE_DIRECTORY, "myss-schema-" + settings.getOriginSchema() + ".cache"));
+		Map<String, String> fingerprints = originSchemer.getTableFingerprints(settings.getOriginSchema());
+		Map<String, Table> cachedTables = schemaCache.load(fingerprints);
+		if (cachedTables.isEmpty()) {
+			List<Table> tables = introspectAll(originSchemer);
+			schemaCache.save(tables, fingerprints);
+			return tables;
+		}
 
+		List<Table> tables = new ArrayList<>();
+		List<Table> changedTables = new ArrayList<>();
+		for (String tableName : fingerprints.keySet()) {
+			Table table = cachedTables.get(tableName);
+			if (table == null) {
+				table = new Table(settings.getOriginSchema(), tableName);
+				changedTables.add(table);
+			}
+			tables.add(table);
+		}
+		log.info("Loaded {} tables from the schema cache, introspecting {} changed tables", cachedTables.size(), changedTables.size());
+		introspectTables(originSchemer, changedTables);
+		if (!changedTables.isEmpty()) {
+			schemaCache.save(tables, fingerprints);
+		}
+		return tables;
 	}
 
-	private void setTableSizes(Schemer originSchemer, Table table) {
-		BigDecimal tableSize = originSchemer.getTableSize(table);
-		table.setTableSizeInMb(tableSize);
-		long tableRowLengthApprox = originSchemer.getTableRowLengthApprox(table);
-		table.setNumberOfRowsApprox(tableRowLengthApprox);
+	private List<Table> introspectAll(Schemer originSchemer) throws SQLException {
+		if (BULK_INTROSPECTION) {
+			return originSchemer.getAllTablesFromInformationSchema(settings.getOriginSchema());
+		}
+		List<Table> tables = originSchemer.getAllTablesFromSchema(settings.getOriginSchema());
+		introspectTables(originSchemer, tables);
+		return tables;
 	}
 
-	private void addConstraints(Schemer originSchemer, Schemer destinationSchemer, List<Table> tables) {
-		tables.forEach(table -> table.setForeignKeys(originSchemer.getTableForeignKeysFromMetaData(table)));
-		tables.stream().filter(table -> !table.getForeignKeys().isEmpty()).forEach(Table::writeAlterTableAddFkConstraintsStatement);
-		// execute a alter table add fk constraints statement
-		tables.stream().filter(table -> !table.getForeignKeys().isEmpty()).forEach(destinationSchemer::executeStatement);
+	/**
+	 * @param journal - progress of a clone run, null when the rows do not go to the destination schema
+	 */
+	private void transferData(RunPlan plan, RowWriterFactory writerFactory, ProgressJournal journal, List<Schemer> destinationSchemers) throws SQLException {
+		long start = System.nanoTime();
+		List<Table> tables = plan.getTables();
+		if (settings.isShrinkData()) {
+			if (journal != null && journal.isResumed()) {
+				// a subset is a closure over all tables, it is extracted again as a whole
+				destinationSchemers.forEach(destinationSchemer -> tables.forEach(destinationSchemer::truncateTable));
+			}
+			shrinkData(tables, writerFactory);
+		} else if (settings.isCopyData()) {
+			copyData(tables, writerFactory, journal, destinationSchemers);
+		}
+		Metrics.recordPhase(Metrics.COPY, start);
 	}
 
-	private void cloneTables(Schemer originSchemer, Schemer destinationSchemer, List<Table> tables) throws SQLException {
+	private void addConstraints(Schemer destinationSchemer, List<Table> tables, ProgressJournal journal) throws IOException {
+		for (Table table : tables) {
+			if (table.getForeignKeys().isEmpty() || journal.isDone(ProgressJournal.constraintsKey(table.getTableName()))) {
+				continue;
+			}
+			table.writeAlterTableAddFkConstraintsStatement();
+			// execute a alter table add fk constraints statement
+			destinationSchemer.executeStatement(table);
+			table.setSqlStatement(null);
+			journal.markDone(ProgressJournal.constraintsKey(table.getTableName()));
+		}
+	}
 
+	private void cloneTables(Schemer destinationSchemer, List<Table> tables, ProgressJournal journal, boolean deferIndices) throws IOException {
 		for (Table table : tables) {
-			Set<Column> tableColumnsFromMetaData = originSchemer.getTableColumnsFromMetaData(table);
-			table.setColumns(tableColumnsFromMetaData);
-			List<Map<String, Object>> tableDetailsAndExtras = originSchemer.getTableDetailsAndExtras(table);
-			table.setTableDetailsAndExtras(tableDetailsAndExtras);
-			Set<Key> tablePrimaryKeysFromMetaData = originSchemer.getTablePrimaryKeysFromMetaData(table);
-			table.setPrimaryKeys(tablePrimaryKeysFromMetaData);
-			Set<Index> tableIndicesFromMetadata = originSchemer.getTableIndicesFromMetadata(table);
-			table.setIndices(tableIndicesFromMetadata);
+			if (journal.isDone(ProgressJournal.createKey(table.getTableName()))) {
+				continue;
+			}
+			if (deferIndices) {
+				Set<Index> indices = new LinkedHashSet<>(table.getIndices());
+				indices.removeAll(table.getDeferrableIndices());
+				table.writeCreateStatement(Collections.emptySet(), indices); // constraints come with addConstraints
+			} else {
+				table.writeCreateStatement();
+			}
+			// execute a create table statement
+			destinationSchemer.executeStatement(table);
+			table.setSqlStatement(null);
+			journal.markDone(ProgressJournal.createKey(table.getTableName()));
+		}
+	}
 
-			table.writeCreateStatement();
+	private void copyData(List<Table> tables, RowWriterFactory writerFactory, ProgressJournal journal, List<Schemer> destinationSchemers) throws SQLException {
+		DataCopier dataCopier = newDataCopier(writerFactory);
+		List<Table> copiedTables = tables.stream().filter(table -> !getTableRules().isStructureOnly(table.getTableName())).collect(Collectors.toList());
+		if (copiedTables.size() < tables.size()) {
+			log.info("Copying no rows of {} structure only tables", tables.size() - copiedTables.size());
 		}
+		long rows;
+		try (ChunkedCopier chunkedCopier = new ChunkedCopier(getDataSourceOrigin(), dataCopier, COPY_CHUNK_ROWS, COPY_WORKERS, journal, destinationSchemers,
+				getTableRules())) {
+			rows = chunkedCopier.copyTables(copiedTables);
+		}
+		log.info("Copied {} rows over {} tables", rows, copiedTables.size());
+	}
 
-		// execute a create table statement
-		tables.forEach(destinationSchemer::executeStatement);
+	private void shrinkData(List<Table> tables, RowWriterFactory writerFactory) throws SQLException {
+		DataCopier dataCopier = newDataCopier(writerFactory);
+		long rows = new SubsetExtractor(dataCopier, new Schemer(getDataSourceOrigin()), tables, SUBSET_LOOKUP_BATCH_SIZE).extract(getTableRules().getSeeds());
+		log.info("Copied a subset of {} rows", rows);
+	}
+
+	private DataCopier newDataCopier(RowWriterFactory writerFactory) {
+		return new DataCopier(getDataSourceOrigin(), writerFactory, COPY_BATCH_SIZE, COPY_QUEUE_CAPACITY, getMaskingRules());
+	}
+
+	private MaskingRules getMaskingRules() {
+		if (maskingRules == null) {
+			maskingRules = MaskingRules.load(settings.getRulesFile());
+		}
+		return maskingRules;
+	}
+
+	private TableRules getTableRules() {
+		if (tableRules == null) {
+			tableRules = TableRules.load(settings.getRulesFile());
+		}
+		return tableRules;
+	}
+
+	/**
+	 * @return a schemer seeing only the tables selected by the table rules
+	 */
+	private Schemer newOriginSchemer() throws SQLException {
+		return new Schemer(getDataSourceOrigin(), getTableRules()::isSelected);
+	}
+
+	/**
+	 * @param bulkLoad - the tables have no secondary indices yet, unique checks are turned off while loading
+	 * @return a writer per stream for the destination, with fan-out destinations one writer thread per destination
+	 */
+	private RowWriterFactory getRowWriterFactory(boolean bulkLoad) {
+		if (getFanOutDestinations().isEmpty()) {
+			return getRowWriterFactory(getDataSourceDestination(), bulkLoad);
+		}
+		List<RowWriterFactory> writerFactories = new ArrayList<>();
+		writerFactories.add(getRowWriterFactory(getDataSourceDestination(), bulkLoad));
+		for (DataSource fanOutDestination : getFanOutDestinations()) {
+			writerFactories.add(getRowWriterFactory(fanOutDestination, bulkLoad));
+		}
+		log.info("Fanning every origin read out to {} destinations", writerFactories.size());
+		return FanOutRowWriter.factory(writerFactories, COPY_QUEUE_CAPACITY);
+	}
+
+	private RowWriterFactory getRowWriterFactory(DataSource destination, boolean bulkLoad) {
+		if (settings.getCopyWriteMode() == WriteMode.LOAD_DATA) {
+			return table -> new LocalInfileRowWriter(destination, table, LOAD_DATA_FLUSH_BYTES, bulkLoad);
+		}
+		return table -> new InsertRowWriter(destination, table, false, bulkLoad);
+	}
+
+	/**
+	 * Per-table introspection through DatabaseMetaData and DESCRIBE, used when bulk introspection is off.
+	 */
+	private void introspectTables(Schemer originSchemer, List<Table> tables) throws SQLException {
+
+		for (Table table : tables) {
+			originSchemer.introspectTable(table);
+		}
 	}
 
 	@Bean(name = "dataSourceOrigin")
 	public DataSource getDataSourceOrigin() {
-		return DataSourceBuilder.create().url(ORIGIN_SCHEMA_URL + ORIGIN_SCHEMA_NAME + "?useSSL=false").username(MySqlShrinkerApplication.ORIGIN_USERNAME)
-				.password(MySqlShrinkerApplication.ORIGIN_PASSWORD).driverClassName(DB_DRIVER).build();
+		if (dataSourceOrigin == null) {
+			dataSourceOrigin = new MeteredDataSource(DataSourceBuilder.create().url(settings.getOriginUrl() + settings.getOriginSchema() + ORIGIN_URL_PARAMETERS)
+					.username(settings.getOriginUsername()).password(settings.getOriginPassword()).driverClassName(DB_DRIVER).build());
+		}
+		return dataSourceOrigin;
+	}
+
+	/**
+	 * @return a data source for every fan-out destination server, same schema and credentials as the main destination
+	 */
+	private List<DataSource> getFanOutDestinations() {
+		if (fanOutDestinations == null) {
+			fanOutDestinations = new ArrayList<>();
+			for (String url : settings.getDestinationFanOutUrls().split(",")) {
+				if (!url.trim().isEmpty()) {
+					fanOutDestinations.add(new MeteredDataSource(DataSourceBuilder.create().url(url.trim() + settings.getDestinationSchema() + DESTINATION_URL_PARAMETERS)
+							.username(settings.getDestinationUsername()).password(settings.getDestinationPassword()).driverClassName(DB_DRIVER).build()));
+				}
+			}
+		}
+		return fanOutDestinations;
 	}
 
 	@Bean(name = "dataSourceDestination")
 	public DataSource getDataSourceDestination() {
-		return DataSourceBuilder.create().url(DESTINATION_SCHEMA_URL + DESTINATION_SCHEMA_NAME + "?useSSL=false").username(DESTINATION_USERNAME).password(DESTINATION_PASSWORD)
-				.driverClassName(DB_DRIVER).build();
+		if (dataSourceDestination == null) {
+			dataSourceDestination = new MeteredDataSource(DataSourceBuilder.create()
+					.url(settings.getDestinationUrl() + settings.getDestinationSchema() + DESTINATION_URL_PARAMETERS)
+					.username(settings.getDestinationUsername()).password(settings.getDestinationPassword()).driverClassName(DB_DRIVER).build());
+		}
+		return dataSourceDestination;
 	}
 
 }
@@ -0,0 +1,116 @@
+package zhgio.myss.runners;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.Query;
+import zhgio.myss.commons.RowCountCache;
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.KeyRange;
+import zhgio.myss.elements.Table;
+
+/**
+ * Counts the rows of tables exactly and fills {@link Table#getNumberOfRowsExact()}.
+ * Tables with a single column integer primary key and more than rangeRows rows are split into key ranges counted
+ * concurrently, each COUNT only walks its slice of the primary key. Ranges of all tables share the workers, every
+ * worker holding one origin connection at a time. Fresh counts from the cache are used without counting.
+ */
+@Slf4j
+public class RowCounter {
+
+	private final JdbcTemplate originTemplate;
+	private final Schemer originSchemer;
+	private final int workers;
+	private final long rangeRows;
+	private final RowCountCache cache;
+
+	/**
+	 * @param cache - counts reused while fresh and updated by this counter, null counts everything
+	 */
+	public RowCounter(DataSource origin, int workers, long rangeRows, RowCountCache cache) throws SQLException {
+		this.originTemplate = new JdbcTemplate(origin);
+		this.originSchemer = new Schemer(origin);
+		this.workers = workers;
+		this.rangeRows = rangeRows;
+		this.cache = cache;
+	}
+
+	public void count(List<Table> tables) throws SQLException, IOException {
+		long start = System.nanoTime();
+		Map<Table, List<Future<Long>>> counts = new LinkedHashMap<>();
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			for (Table table : tables) {
+				Long cached = cache == null ? null : cache.get(table.getTableName());
+				if (cached != null) {
+					table.setNumberOfRowsExact(cached);
+				} else {
+					counts.put(table, submitCounts(executor, table));
+				}
+			}
+			for (Map.Entry<Table, List<Future<Long>>> entry : counts.entrySet()) {
+				long rows = 0;
+				for (Future<Long> future : entry.getValue()) {
+					rows += await(future);
+				}
+				Table table = entry.getKey();
+				table.setNumberOfRowsExact(rows);
+				table.setRowCountFresh(true);
+				log.debug("Table {} has {} rows, {} estimated", table.getTableName(), rows, table.getNumberOfRowsApprox());
+				if (cache != null) {
+					cache.put(table.getTableName(), rows);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		if (cache != null && !counts.isEmpty()) {
+			cache.save();
+		}
+		log.info("Counted the rows of {} tables exactly in {} ms, {} counts came from the cache", counts.size(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), tables.size() - counts.size());
+	}
+
+	private List<Future<Long>> submitCounts(ExecutorService executor, Table table) {
+		List<Future<Long>> futures = new ArrayList<>();
+		Column keyColumn = table.getIntegerPrimaryKeyColumn();
+		KeyRange bounds = keyColumn == null || table.getNumberOfRowsApprox() <= rangeRows ? null : originSchemer.getKeyBounds(table, keyColumn);
+		if (bounds == null) {
+			futures.add(executor.submit(() -> originTemplate.queryForObject(String.format(Query.QUERY_TABLE_EXACT_COUNT, table.getTableName()), Long.class)));
+			return futures;
+		}
+		long ranges = (table.getNumberOfRowsApprox() + rangeRows - 1) / rangeRows;
+		for (KeyRange range : KeyRange.split(bounds.getLowerBound(), bounds.getUpperBound(), ranges)) {
+			futures.add(executor.submit(() -> originTemplate.queryForObject(
+					String.format(Query.QUERY_KEY_RANGE_EXACT_COUNT, keyColumn.getColumnName(), table.getTableName(), range.getLowerBound(), range.getUpperBound()), Long.class)));
+		}
+		return futures;
+	}
+
+	private long await(Future<Long> future) throws SQLException {
+		try {
+			Long count = future.get();
+			return count == null ? 0 : count;
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while counting rows", e);
+		}
+	}
+
+}
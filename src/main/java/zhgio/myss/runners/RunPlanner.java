@@ -0,0 +1,126 @@
+package zhgio.myss.runners;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.TableRules;
+import zhgio.myss.elements.RunPlan;
+import zhgio.myss.elements.Table;
+import zhgio.myss.elements.TableRule;
+
+/**
+ * Plans the data copy before anything is written. Every table gets a cost estimated from its statistics, tables that
+ * {@link ChunkedCopier} splits into key ranges count as that many work units of equal cost, and the units are handed
+ * out largest first to the least loaded worker (LPT scheduling). Tables are started in that order, so the biggest
+ * ones are spread over the workers early instead of keeping one worker busy alone at the end of the run.
+ * The table rules are applied as the copy applies them: structure-only tables cost nothing, tables with a row limit
+ * are a single stream costing at most that many rows.
+ */
+@Slf4j
+public class RunPlanner {
+
+	private static final long MB = 1024 * 1024;
+
+	private final int workers;
+	private final long chunkRows;
+	private final long rowCost;
+	private final TableRules tableRules;
+
+	/**
+	 * @param chunkRows - rows per chunk of a split table, as in {@link ChunkedCopier}
+	 * @param rowCost - fixed cost of copying one row, in bytes of data
+	 */
+	public RunPlanner(int workers, long chunkRows, long rowCost) {
+		this(workers, chunkRows, rowCost, TableRules.none());
+	}
+
+	public RunPlanner(int workers, long chunkRows, long rowCost, TableRules tableRules) {
+		this.workers = workers;
+		this.chunkRows = chunkRows;
+		this.rowCost = rowCost;
+		this.tableRules = tableRules;
+	}
+
+	/**
+	 * @param tables - tables with fresh statistics, see {@link Schemer#refreshTableStatistics}
+	 */
+	public RunPlan plan(List<Table> tables) {
+		RunPlan plan = new RunPlan(workers);
+		List<WorkUnit> workUnits = new ArrayList<>();
+		for (Table table : tables) {
+			long cost = estimateCost(table);
+			int units = countUnits(table);
+			plan.getCosts().put(table.getTableName(), cost);
+			plan.getUnits().put(table.getTableName(), units);
+			for (int i = 0; i < units; i++) {
+				workUnits.add(new WorkUnit(units == 1 ? table.getTableName() : table.getTableName() + "#" + (i + 1), cost / units));
+			}
+		}
+		plan.getTables().addAll(tables);
+		plan.getTables().sort(Comparator.comparingLong((Table table) -> plan.getCosts().get(table.getTableName())).reversed());
+
+		workUnits.sort(Comparator.comparingLong((WorkUnit unit) -> unit.cost).reversed());
+		PriorityQueue<Integer> idleWorkers = new PriorityQueue<>(Comparator.comparingLong((Integer worker) -> plan.getWorkerLoads()[worker]).thenComparingInt(worker -> worker));
+		for (int i = 0; i < workers; i++) {
+			idleWorkers.add(i);
+		}
+		for (WorkUnit unit : workUnits) {
+			int worker = idleWorkers.poll();
+			plan.getWorkerLoads()[worker] += unit.cost;
+			plan.getWorkerUnits().get(worker).add(unit.name);
+			idleWorkers.add(worker);
+		}
+		log.info("Planned {} tables in {} work units over {} workers", tables.size(), workUnits.size(), workers);
+		return plan;
+	}
+
+	/**
+	 * Data and index bytes to read, write and rebuild plus a fixed cost per row, exact row counts are preferred over the
+	 * estimated ones when they were taken. Tables without length statistics fall back to their size in MB.
+	 */
+	long estimateCost(Table table) {
+		long bytes = table.getDataLength() + table.getIndexLength();
+		if (bytes == 0 && table.getTableSizeInMb() != null) {
+			bytes = table.getTableSizeInMb().longValue() * MB;
+		}
+		long rows = Math.max(0, table.getNumberOfRowsExact() > 0 ? table.getNumberOfRowsExact() : table.getNumberOfRowsApprox());
+		if (tableRules.isStructureOnly(table.getTableName())) {
+			return 0;
+		}
+		TableRule rule = tableRules.getRule(table.getTableName());
+		if (rule != null && rule.getRowLimit() > 0 && rule.getRowLimit() < rows) {
+			bytes = (long) (bytes * ((double) rule.getRowLimit() / rows));
+			rows = rule.getRowLimit();
+		}
+		return bytes + rows * rowCost;
+	}
+
+	/**
+	 * @return the units {@link ChunkedCopier#copyTables} copies the table in, 0 for structure-only tables
+	 */
+	private int countUnits(Table table) {
+		if (tableRules.isStructureOnly(table.getTableName())) {
+			return 0;
+		}
+		TableRule rule = tableRules.getRule(table.getTableName());
+		if (table.getIntegerPrimaryKeyColumn() == null || table.getNumberOfRowsApprox() <= chunkRows || rule != null && rule.getRowLimit() > 0) {
+			return 1;
+		}
+		return (int) Math.max(1, (table.getNumberOfRowsApprox() + chunkRows - 1) / chunkRows);
+	}
+
+	private static class WorkUnit {
+
+		private final String name;
+		private final long cost;
+
+		private WorkUnit(String name, long cost) {
+			this.name = name;
+			this.cost = cost;
+		}
+	}
+
+}
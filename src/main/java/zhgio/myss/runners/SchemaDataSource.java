@@ -0,0 +1,35 @@
+package zhgio.myss.runners;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * One schema's view of a pool shared by all the schemas of a server: every borrowed connection is switched to the
+ * schema first, so unqualified table names resolve as with a schema in the url while the pool caps the connections.
+ */
+public class SchemaDataSource extends DelegatingDataSource {
+
+	private final String schemaName;
+
+	public SchemaDataSource(DataSource sharedDataSource, String schemaName) {
+		super(sharedDataSource);
+		this.schemaName = schemaName;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		Connection connection = super.getConnection();
+		try {
+			connection.setCatalog(schemaName);
+		} catch (SQLException e) {
+			connection.close();
+			throw e;
+		}
+		return connection;
+	}
+
+}
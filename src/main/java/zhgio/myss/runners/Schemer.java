@@ -1,36 +1,45 @@
 package zhgio.myss.runners;
 
 import java.math.BigDecimal;
-import java.sql.DatabaseMetaData;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 
 import javax.sql.DataSource;
 
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
 import lombok.extern.slf4j.Slf4j;
 import zhgio.myss.commons.DataType;
+import zhgio.myss.commons.Metrics;
 import zhgio.myss.commons.Query;
 import zhgio.myss.contracts.Executor;
 import zhgio.myss.contracts.MetaDataExplorer;
 import zhgio.myss.elements.Column;
 import zhgio.myss.elements.Index;
 import zhgio.myss.elements.Key;
+import zhgio.myss.elements.KeyRange;
 import zhgio.myss.elements.Table;
 
 import static zhgio.myss.commons.Keyword.COLUMN_NAME;
 import static zhgio.myss.commons.Keyword.DATA_TYPE;
+import static zhgio.myss.commons.Keyword.EMPTY_STR;
 import static zhgio.myss.commons.Keyword.IS_AUTOINCREMENT;
 import static zhgio.myss.commons.Keyword.IS_NULLABLE;
 import static zhgio.myss.commons.Keyword.TABLE_NAME;
@@ -45,34 +54,48 @@ import static zhgio.myss.commons.Query.QUERY_SIZE_ONE_TABLE;
 @Slf4j
 public class Schemer implements Executor, MetaDataExplorer {
 
-	private DatabaseMetaData databaseMetaData;
+	private DataSource dataSource;
 	private JdbcTemplate jdbcTemplate;
 	private NamedParameterJdbcTemplate namedParamTemplate;
+	private Predicate<String> tableFilter = tableName -> true;
 
 	private Schemer() {
 	}
 
 	public Schemer(DataSource dataSource) throws SQLException {
-		this.databaseMetaData = dataSource.getConnection().getMetaData();
+		this.dataSource = dataSource;
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 		this.namedParamTemplate = new NamedParameterJdbcTemplate(dataSource);
 	}
 
+	/**
+	 * @param tableFilter - by table name, the tables it rejects are left out of the schema before any of their metadata is read
+	 */
+	public Schemer(DataSource dataSource, Predicate<String> tableFilter) throws SQLException {
+		this(dataSource);
+		this.tableFilter = tableFilter;
+	}
+
 	@Override
 	public List<Table> getAllTablesFromSchema(String schemaName) {
+		Metrics.countRoundTrips("getAllTablesFromSchema", 1);
 		List<Table> tables = new ArrayList<>();
 		// TABLE param filters only tables, otherwise we would get tables, views, etc
-		try (ResultSet originTablesRs = this.databaseMetaData.getTables(null, schemaName, WILDCARD, new String[] { "TABLE" })) {
+		try (Connection connection = dataSource.getConnection();
+				ResultSet originTablesRs = connection.getMetaData().getTables(null, schemaName, WILDCARD, new String[] { "TABLE" })) {
 			log.info("Getting tables for schema pattern {}", schemaName);
+			int skipped = 0;
 			while (originTablesRs.next()) {
 				String tableName = originTablesRs.getString(TABLE_NAME); // get the table name only
-				//				if (tableName.equals("acquisitions")) {
+				if (!tableFilter.test(tableName)) {
+					skipped++;
+					continue;
+				}
 				Table table = new Table(schemaName, tableName);
 				tables.add(table);
-				//				}
 				log.debug("Fetched table {} from origin", tableName);
 			}
-			log.info("Got {} tables from origin", tables.size());
+			log.info("Got {} tables from origin, {} left out by the table rules", tables.size(), skipped);
 		} catch (SQLException e) {
 			log.error("Error in connection: {}", e);
 		}
@@ -85,15 +108,80 @@ public class Schemer implements Executor, MetaDataExplorer {
 	 */
 	@Override
 	public void executeStatement(Table table) {
+		Metrics.countRoundTrips("executeStatement", 1);
 		log.info("Executing SQL statement for table {}", table.getTableName());
 		this.jdbcTemplate.execute(table.getSqlStatement());
 	}
 
+	/**
+	 * Fills the model of a table known by name through per-table DatabaseMetaData and DESCRIBE calls.
+	 */
+	public void introspectTable(Table table) throws SQLException {
+		table.setColumns(getTableColumnsFromMetaData(table));
+		table.setTableDetailsAndExtras(getTableDetailsAndExtras(table));
+		table.setPrimaryKeys(getTablePrimaryKeysFromMetaData(table));
+		table.setIndices(getTableIndicesFromMetadata(table));
+		table.setForeignKeys(getTableForeignKeysFromMetaData(table));
+	}
+
+	/**
+	 * Executes a native sql statement not bound to a table model, with foreign key checks off so statements touching
+	 * constrained columns and indices can run in any order.
+	 */
+	public void executeStatement(String sql) {
+		Metrics.countRoundTrips("executeStatement", 1);
+		log.info("Executing SQL statement {}", sql);
+		executeWithoutForeignKeyChecks(sql);
+	}
+
+	/**
+	 * Empties the table, whatever references it. Used to throw away the rows of an interrupted copy.
+	 */
+	public void truncateTable(Table table) {
+		Metrics.countRoundTrips("truncateTable", 1);
+		log.info("Truncating table {}", table.getTableName());
+		executeWithoutForeignKeyChecks(String.format(Query.QUERY_TRUNCATE_TABLE, table.getTableName()));
+	}
+
+	/**
+	 * Deletes the rows of one key range. Used to throw away a chunk of an interrupted copy.
+	 */
+	public void deleteKeyRange(Table table, Column keyColumn, KeyRange range) {
+		Metrics.countRoundTrips("deleteKeyRange", 1);
+		log.debug("Deleting range [{}, {}] of table {}", range.getLowerBound(), range.getUpperBound(), table.getTableName());
+		executeWithoutForeignKeyChecks(String.format(Query.QUERY_DELETE_KEY_RANGE, keyColumn.getColumnName(), table.getTableName(), range.getLowerBound(), range.getUpperBound()));
+	}
+
+	/**
+	 * Reads the lowest and highest key off both ends of the key's index.
+	 * @return the bounds, null for an empty table
+	 */
+	public KeyRange getKeyBounds(Table table, Column keyColumn) {
+		Metrics.countRoundTrips("getKeyBounds", 1);
+		return jdbcTemplate.queryForObject(String.format(Query.QUERY_KEY_BOUNDS, keyColumn.getColumnName(), table.getTableName()),
+				(rs, rowNum) -> rs.getObject("lower_bound") == null ? null : new KeyRange(rs.getLong("lower_bound"), rs.getLong("upper_bound")));
+	}
+
+	private void executeWithoutForeignKeyChecks(String sql) {
+		this.jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("SET foreign_key_checks = 0");
+				try {
+					statement.execute(sql);
+				} finally {
+					statement.execute("SET foreign_key_checks = 1");
+				}
+			}
+			return null;
+		});
+	}
+
 	/**
 	 * Runs a native SQL query to get the number of rows in the queried table.
 	 */
 	@Override
 	public long getTableRowLengthApprox(Table table) {
+		Metrics.countRoundTrips("getTableRowLengthApprox", 1);
 		log.debug("Checking row length approx on table {}", table.getTableName());
 		@SuppressWarnings("ConstantConditions") long approxTableRowCount = namedParamTemplate
 				.queryForObject(Query.QUERY_TABLE_STATUS, new MapSqlParameterSource().addValue("name", table.getTableName()), (rs, rowNum) -> rs.getLong("Rows"));
@@ -106,7 +194,9 @@ public class Schemer implements Executor, MetaDataExplorer {
 	 */
 	@Override
 	public Set<Index> getTableIndicesFromMetadata(Table table) throws SQLException {
-		try (ResultSet indicesRs = this.databaseMetaData.getIndexInfo(null, table.getSchemaName(), table.getTableName(), false, false)) {
+		Metrics.countRoundTrips("getTableIndicesFromMetadata", 1);
+		try (Connection connection = dataSource.getConnection();
+				ResultSet indicesRs = connection.getMetaData().getIndexInfo(null, table.getSchemaName(), table.getTableName(), false, false)) {
 			Map<String, Index> indices = new HashMap<>();
 			while (indicesRs.next()) {
 				String indexTableReference = indicesRs.getString("TABLE_NAME");
@@ -120,7 +210,7 @@ public class Schemer implements Executor, MetaDataExplorer {
 						Index index = indices.get(indexName);
 						index.getColumnReferences().add(indexColumnName);
 					} else {
-						Index index = new Index(indexTableReference, indexName, new LinkedHashSet<>(Collections.singleton(indexColumnName)), "A".equals(ascDesc));
+						Index index = new Index(indexTableReference, indexName, new LinkedHashSet<>(Collections.singleton(indexColumnName)), "A".equals(ascDesc), !indicesRs.getBoolean("NON_UNIQUE"));
 						indices.put(indexName, index);
 					}
 				}
@@ -135,7 +225,9 @@ public class Schemer implements Executor, MetaDataExplorer {
 	 */
 	@Override
 	public Set<Key> getTablePrimaryKeysFromMetaData(Table table) throws SQLException {
-		try (ResultSet primaryKeyRs = this.databaseMetaData.getPrimaryKeys(null, table.getSchemaName(), table.getTableName())) {
+		Metrics.countRoundTrips("getTablePrimaryKeysFromMetaData", 1);
+		try (Connection connection = dataSource.getConnection();
+				ResultSet primaryKeyRs = connection.getMetaData().getPrimaryKeys(null, table.getSchemaName(), table.getTableName())) {
 			Set<Key> primaryKeys = new HashSet<>();
 			while (primaryKeyRs.next()) {
 				String keyName = primaryKeyRs.getString("COLUMN_NAME");
@@ -157,7 +249,9 @@ public class Schemer implements Executor, MetaDataExplorer {
 	 */
 	@Override
 	public Set<Key> getTableForeignKeysFromMetaData(Table table) {
-		try (ResultSet foreignKeyRs = this.databaseMetaData.getImportedKeys(null, table.getSchemaName(), table.getTableName())) {
+		Metrics.countRoundTrips("getTableForeignKeysFromMetaData", 1);
+		try (Connection connection = dataSource.getConnection();
+				ResultSet foreignKeyRs = connection.getMetaData().getImportedKeys(null, table.getSchemaName(), table.getTableName())) {
 			Key key;
 			Set<Key> foreignKeys = new HashSet<>();
 			while (foreignKeyRs.next()) {
@@ -179,6 +273,7 @@ public class Schemer implements Executor, MetaDataExplorer {
 
 	@Override
 	public List<Map<String, Object>> getTableDetailsAndExtras(Table table) {
+		Metrics.countRoundTrips("getTableDetailsAndExtras", 1);
 		log.debug("Running DESCRIBE for type details on table {}", table.getTableName());
 		return jdbcTemplate.queryForList("DESCRIBE " + table.getTableName());
 	}
@@ -188,6 +283,7 @@ public class Schemer implements Executor, MetaDataExplorer {
 	 */
 	@Override
 	public BigDecimal getTableSize(Table table) {
+		Metrics.countRoundTrips("getTableSize", 1);
 		@SuppressWarnings("ConstantConditions") int sizeInMb = namedParamTemplate
 				.queryForObject(QUERY_SIZE_ONE_TABLE, new MapSqlParameterSource().addValue("tableSchema", table.getSchemaName()).addValue("tableName", table.getTableName()),
 						(rs, rowNum) -> rs.getInt("size-MB"));
@@ -200,9 +296,11 @@ public class Schemer implements Executor, MetaDataExplorer {
 	 */
 	@Override
 	public Set<Column> getTableColumnsFromMetaData(Table table) throws SQLException {
+		Metrics.countRoundTrips("getTableColumnsFromMetaData", 1);
 
 		Set<Column> columns = new LinkedHashSet<>();
-		try (ResultSet columnsResultSet = this.databaseMetaData.getColumns(null, table.getSchemaName(), table.getTableName(), WILDCARD)) {
+		try (Connection connection = dataSource.getConnection();
+				ResultSet columnsResultSet = connection.getMetaData().getColumns(null, table.getSchemaName(), table.getTableName(), WILDCARD)) {
 			while (columnsResultSet.next()) {
 				Column col = new Column(table);
 				String colName = columnsResultSet.getString(COLUMN_NAME);
@@ -211,9 +309,7 @@ public class Schemer implements Executor, MetaDataExplorer {
 				col.setType(dataType);
 				col.setAutoincrement(columnsResultSet.getString(IS_AUTOINCREMENT).equals(YES));
 				col.setNullable(columnsResultSet.getString(IS_NULLABLE).equals(YES));
-				String columnDefault = columnsResultSet.getString("COLUMN_DEF");
-				col.setDefaultValue(columnDefault == null ? "NULL" : col.isAnyDateTimeAndCurrentTimestamp(columnDefault) ? columnDefault : "'" + columnDefault + "'");
-				col.setDefaultable(columnDefault != null);
+				setColumnDefault(col, columnsResultSet.getString("COLUMN_DEF"));
 
 				columns.add(col);
 				log.debug("Added column {} to table {}", colName, table.getTableName());
@@ -224,6 +320,179 @@ public class Schemer implements Executor, MetaDataExplorer {
 
 	}
 
+	/**
+	 * Builds every table of the schema out of four information_schema queries instead of a handful of round trips per table.
+	 * The resulting model matches the one assembled by the per-table DatabaseMetaData / DESCRIBE methods.
+	 */
+	@Override
+	public List<Table> getAllTablesFromInformationSchema(String schemaName) {
+		Metrics.countRoundTrips("getAllTablesFromInformationSchema", 4);
+		log.info("Bulk loading tables and metadata for schema {}", schemaName);
+		Map<String, Table> tables = new LinkedHashMap<>();
+		jdbcTemplate.query(Query.QUERY_SCHEMA_TABLES, (RowCallbackHandler) rs -> {
+			if (!tableFilter.test(rs.getString(TABLE_NAME))) {
+				return; // the rows of the other queries for this table are skipped as those of views are
+			}
+			Table table = new Table(schemaName, rs.getString(TABLE_NAME));
+			table.setColumns(new LinkedHashSet<>());
+			table.setPrimaryKeys(new HashSet<>());
+			table.setForeignKeys(new HashSet<>());
+			table.setNumberOfRowsApprox(rs.getLong("TABLE_ROWS"));
+			table.setTableSizeInMb(BigDecimal.valueOf(rs.getInt("size-MB")));
+			tables.put(table.getTableName(), table);
+		}, schemaName);
+		log.info("Got {} tables from origin", tables.size());
+
+		jdbcTemplate.query(Query.QUERY_SCHEMA_COLUMNS, (RowCallbackHandler) rs -> {
+			Table table = tables.get(rs.getString(TABLE_NAME));
+			if (table == null) { // views also show up in information_schema.COLUMNS
+				return;
+			}
+			Column col = new Column(table);
+			col.setColumnName(rs.getString(COLUMN_NAME));
+			col.setType(getMySqlDataTypeFromTypeName(rs.getString(DATA_TYPE), rs.getString("COLUMN_TYPE")));
+			String extra = rs.getString("EXTRA");
+			col.setAutoincrement(StringUtils.contains(extra, "auto_increment"));
+			col.setNullable(YES.equals(rs.getString(IS_NULLABLE)));
+			setColumnDefault(col, rs.getString("COLUMN_DEFAULT"));
+			col.updateColumnFromTypeString(rs.getString("COLUMN_TYPE"));
+			col.updateColumnFromExtraString(extra);
+			table.getColumns().add(col);
+		}, schemaName);
+		log.info("Set columns and type details for {} tables", tables.size());
+
+		Map<String, Map<String, Index>> indicesByTable = new HashMap<>();
+		jdbcTemplate.query(Query.QUERY_SCHEMA_STATISTICS, (RowCallbackHandler) rs -> {
+			Table table = tables.get(rs.getString(TABLE_NAME));
+			if (table == null) {
+				return;
+			}
+			String indexName = rs.getString("INDEX_NAME");
+			String indexColumnName = rs.getString(COLUMN_NAME);
+			if ("PRIMARY".equals(indexName)) {
+				table.getPrimaryKeys().add(new Key(true, table.getTableName(), indexColumnName));
+				return;
+			}
+			Map<String, Index> indices = indicesByTable.computeIfAbsent(table.getTableName(), tableName -> new HashMap<>());
+			if (rs.getInt("SEQ_IN_INDEX") > 1 && indices.containsKey(indexName)) {
+				indices.get(indexName).getColumnReferences().add(indexColumnName);
+			} else {
+				Index index = new Index(table.getTableName(), indexName, new LinkedHashSet<>(Collections.singleton(indexColumnName)), "A".equals(rs.getString("COLLATION")), rs.getInt("NON_UNIQUE") == 0);
+				indices.put(indexName, index);
+			}
+		}, schemaName);
+		tables.values().forEach(table -> table.setIndices(new LinkedHashSet<>(indicesByTable.getOrDefault(table.getTableName(), Collections.emptyMap()).values())));
+		log.info("Set primary keys and indices for {} tables", tables.size());
+
+		jdbcTemplate.query(Query.QUERY_SCHEMA_FOREIGN_KEYS, (RowCallbackHandler) rs -> {
+			Table table = tables.get(rs.getString(TABLE_NAME));
+			if (table != null) {
+				table.getForeignKeys().add(new Key(false, rs.getString("REFERENCED_TABLE_NAME"), rs.getString("REFERENCED_COLUMN_NAME"), rs.getString("CONSTRAINT_NAME"), rs.getString(COLUMN_NAME)));
+			}
+		}, schemaName);
+		log.info("Foreign key constraints set for {} tables", tables.size());
+
+		return new ArrayList<>(tables.values());
+	}
+
+	@Override
+	public Map<String, String> getTableFingerprints(String schemaName) {
+		return getTableFingerprints(schemaName, true);
+	}
+
+	/**
+	 * Same fingerprints without the creation time, equal for tables of the same definition in different schemas.
+	 */
+	public Map<String, String> getTableStructureFingerprints(String schemaName) {
+		return getTableFingerprints(schemaName, false);
+	}
+
+	private Map<String, String> getTableFingerprints(String schemaName, boolean withCreateTime) {
+		Metrics.countRoundTrips("getTableFingerprints", 1);
+		Map<String, String> fingerprints = new LinkedHashMap<>();
+		jdbcTemplate.query(Query.QUERY_SCHEMA_FINGERPRINTS, (RowCallbackHandler) rs -> {
+			if (tableFilter.test(rs.getString(TABLE_NAME))) {
+				fingerprints.put(rs.getString(TABLE_NAME), (withCreateTime ? rs.getString("CREATE_TIME") + ":" : EMPTY_STR) + rs.getLong("column_count") + ":"
+						+ rs.getLong("column_checksum") + ":" + rs.getLong("index_checksum") + ":" + rs.getLong("foreign_key_checksum"));
+			}
+		}, schemaName, schemaName, schemaName, schemaName);
+		log.info("Fingerprinted {} tables of schema {}", fingerprints.size(), schemaName);
+		return fingerprints;
+	}
+
+	@Override
+	public void refreshTableStatistics(String schemaName, List<Table> tables) {
+		Metrics.countRoundTrips("refreshTableStatistics", 1);
+		Map<String, Table> tablesByName = new HashMap<>();
+		tables.forEach(table -> tablesByName.put(table.getTableName(), table));
+		jdbcTemplate.query(Query.QUERY_SIZES_ALL_TABLES, (RowCallbackHandler) rs -> {
+			Table table = tablesByName.get(rs.getString(TABLE_NAME));
+			if (table != null) {
+				table.setNumberOfRowsApprox(rs.getLong("TABLE_ROWS"));
+				table.setDataLength(rs.getLong("DATA_LENGTH"));
+				table.setIndexLength(rs.getLong("INDEX_LENGTH"));
+				table.setTableSizeInMb(BigDecimal.valueOf(rs.getInt("size-MB")));
+			}
+		}, schemaName);
+	}
+
+	/**
+	 * Same default value rules for both the DatabaseMetaData and the information_schema path.
+	 */
+	private void setColumnDefault(Column col, String columnDefault) {
+		col.setDefaultValue(columnDefault == null ? "NULL" : col.isAnyDateTimeAndCurrentTimestamp(columnDefault) ? columnDefault : "'" + columnDefault + "'");
+		col.setDefaultable(columnDefault != null);
+	}
+
+	/**
+	 * Converts the information_schema DATA_TYPE to our custom datatype, following the driver's java.sql.Types mapping
+	 * so both introspection paths agree (tinyint(1) is reported as BIT, datetime as TIMESTAMP, etc).
+	 */
+	private DataType getMySqlDataTypeFromTypeName(String dataType, String columnType) {
+		switch (dataType) {
+		case "decimal":
+		case "numeric":
+			return DataType.DECIMAL;
+		case "int":
+		case "integer":
+		case "mediumint":
+			return DataType.INT;
+		case "smallint":
+			return DataType.SMALLINT;
+		case "bit":
+			return DataType.BIT;
+		case "tinyint":
+			return StringUtils.startsWith(columnType, "tinyint(1)") ? DataType.BIT : DataType.TINYINT;
+		case "bigint":
+			return DataType.BIGINT;
+		case "float":
+			return DataType.FLOAT;
+		case "double":
+		case "real":
+			return DataType.DOUBLE;
+		case "char":
+		case "enum":
+		case "set":
+			return DataType.CHAR;
+		case "varchar":
+			return DataType.VARCHAR;
+		case "date":
+		case "year":
+			return DataType.DATE;
+		case "time":
+			return DataType.TIME;
+		case "datetime":
+		case "timestamp":
+			return DataType.TIMESTAMP;
+		case "tinyblob":
+		case "blob":
+		case "mediumblob":
+		case "longblob":
+			return DataType.BLOB;
+		}
+		return null;
+	}
+
 	/**
 	 * Helper method that takes in the database metadata type and converts it to
 	 * our custom datatype (regular mysql types extended with java.sql.types)
@@ -0,0 +1,292 @@
+package zhgio.myss.runners;
+
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.extern.slf4j.Slf4j;
+import zhgio.myss.commons.LongHashSet;
+import zhgio.myss.contracts.SamplingStrategy;
+import zhgio.myss.elements.Column;
+import zhgio.myss.elements.Key;
+import zhgio.myss.elements.KeyRange;
+import zhgio.myss.elements.Table;
+import zhgio.myss.elements.TableRule;
+
+import static zhgio.myss.commons.Keyword.BACKTICK;
+import static zhgio.myss.commons.Keyword.COMMA;
+
+/**
+ * Extracts a referentially closed subset of the origin.
+ * Starts from the seed rows and keeps pulling in every parent row referenced through a foreign key,
+ * fetching the parents in large IN batches, until no copied row points to a missing parent.
+ * Seeds with a sampling strategy are read through their primary key, see {@link SamplingStrategy}.
+ * A row is copied once even when several lookups select it, tables with a single column primary key remember the keys
+ * of their copied rows.
+ */
+@Slf4j
+public class SubsetExtractor {
+
+	private final DataCopier dataCopier;
+	private final Schemer originSchemer;
+	private final int lookupBatchSize;
+	private final Map<String, Table> tablesByName = new LinkedHashMap<>();
+	// keys of every column referenced by a foreign key, by table name and column name
+	private final Map<String, Map<String, KeyTracker>> trackers = new LinkedHashMap<>();
+	private final Map<String, Predicate<Object[]>> rowFilters = new HashMap<>();
+
+	/**
+	 * @param originSchemer - looks up the key bounds of sampled seed tables
+	 */
+	public SubsetExtractor(DataCopier dataCopier, Schemer originSchemer, List<Table> tables, int lookupBatchSize) {
+		this.dataCopier = dataCopier;
+		this.originSchemer = originSchemer;
+		this.lookupBatchSize = lookupBatchSize;
+		tables.forEach(table -> tablesByName.put(table.getTableName(), table));
+		for (Table table : tables) {
+			for (Key fk : table.getForeignKeys()) {
+				if (tablesByName.containsKey(fk.getTableName())) {
+					trackers.computeIfAbsent(fk.getTableName(), name -> new LinkedHashMap<>()).computeIfAbsent(fk.getColumnName(), name -> new KeyTracker());
+				}
+			}
+		}
+		tables.forEach(table -> rowFilters.put(table.getTableName(), compileRowFilter(table)));
+	}
+
+	/**
+	 * Copies the seed rows and then their parents, transitively.
+	 * @return the number of copied rows
+	 */
+	public long extract(List<TableRule> seeds) throws SQLException {
+		long rows = 0;
+		for (TableRule seed : seeds) {
+			Table table = tablesByName.get(seed.getTableName());
+			if (table == null) {
+				log.warn("Seed table {} is not part of the origin schema, skipping it", seed.getTableName());
+				continue;
+			}
+			for (String clause : getSeedClauses(table, seed)) {
+				log.info("Copying seed rows of table {} with {}", table.getTableName(), StringUtils.abbreviate(clause, 200));
+				rows += dataCopier.copyRows(table, clause, rowFilters.get(table.getTableName()));
+			}
+		}
+
+		int round = 0;
+		boolean pending = true;
+		while (pending) {
+			pending = false;
+			for (Map.Entry<String, Map<String, KeyTracker>> tableTrackers : trackers.entrySet()) {
+				Table table = tablesByName.get(tableTrackers.getKey());
+				for (Map.Entry<String, KeyTracker> columnTracker : tableTrackers.getValue().entrySet()) {
+					if (columnTracker.getValue().hasQueued()) {
+						pending = true;
+						rows += copyReferencedRows(table, columnTracker.getKey(), columnTracker.getValue());
+					}
+				}
+			}
+			log.info("Finished closure round {}, {} rows copied so far", round++, rows);
+		}
+		return rows;
+	}
+
+	private List<String> getSeedClauses(Table table, TableRule seed) {
+		if (seed.getSampling() == null) {
+			return Collections.singletonList(seed.toSelectClause());
+		}
+		Column keyColumn = table.getIntegerPrimaryKeyColumn();
+		if (keyColumn == null) {
+			long targetRows = seed.getSampling().getTargetRows(table);
+			log.warn("Table {} has no integer primary key to sample through, taking its first {} seed rows instead", table.getTableName(), targetRows);
+			return Collections.singletonList(seed.toSelectClause(targetRows));
+		}
+		KeyRange bounds = originSchemer.getKeyBounds(table, keyColumn);
+		if (bounds == null) {
+			return Collections.emptyList();
+		}
+		List<String> clauses = seed.getSampling().toSelectClauses(table, keyColumn, bounds, seed.getWhere());
+		log.info("Sampling table {} with {} in {} statements", table.getTableName(), seed.getSampling().getClass().getSimpleName(), clauses.size());
+		return clauses;
+	}
+
+	/**
+	 * Copies the rows of the parent table whose column holds one of the queued keys, in sorted IN batches.
+	 */
+	private long copyReferencedRows(Table table, String columnName, KeyTracker tracker) throws SQLException {
+		long[] keys = tracker.drainQueuedKeys();
+		List<String> literals = tracker.drainQueuedLiterals();
+		Arrays.sort(keys); // neighbouring keys share index pages
+		long rows = 0;
+		StringBuilder in = new StringBuilder();
+		for (int from = 0; from < keys.length; from += lookupBatchSize) {
+			in.setLength(0);
+			for (int i = from; i < Math.min(keys.length, from + lookupBatchSize); i++) {
+				in.append(i > from ? COMMA : "").append(keys[i]);
+			}
+			rows += copyWhereIn(table, columnName, in);
+		}
+		for (int from = 0; from < literals.size(); from += lookupBatchSize) {
+			in.setLength(0);
+			in.append(String.join(COMMA, literals.subList(from, Math.min(literals.size(), from + lookupBatchSize))));
+			rows += copyWhereIn(table, columnName, in);
+		}
+		log.debug("Copied {} referenced rows of table {} for {} keys", rows, table.getTableName(), keys.length + literals.size());
+		return rows;
+	}
+
+	private long copyWhereIn(Table table, String columnName, StringBuilder in) throws SQLException {
+		String clause = "WHERE " + BACKTICK + columnName + BACKTICK + " IN (" + in + ")";
+		return dataCopier.copyRows(table, clause, rowFilters.get(table.getTableName()));
+	}
+
+	/**
+	 * Resolves once per table which row positions hold its primary key, referenced keys and foreign keys,
+	 * so looking at a row is only a couple of array reads.
+	 * @return a filter rejecting the rows already copied, and tracking the keys of the others
+	 */
+	private Predicate<Object[]> compileRowFilter(Table table) {
+		List<String> columnNames = new ArrayList<>();
+		table.getColumns().stream().map(Column::getColumnName).forEach(columnNames::add);
+
+		Map<String, KeyTracker> ownTrackers = trackers.getOrDefault(table.getTableName(), new HashMap<>());
+		int[] ownPositions = new int[ownTrackers.size()];
+		KeyTracker[] own = new KeyTracker[ownTrackers.size()];
+		int i = 0;
+		for (Map.Entry<String, KeyTracker> entry : ownTrackers.entrySet()) {
+			ownPositions[i] = columnNames.indexOf(entry.getKey());
+			own[i++] = entry.getValue();
+		}
+
+		List<Key> foreignKeys = new ArrayList<>();
+		table.getForeignKeys().stream().filter(fk -> tablesByName.containsKey(fk.getTableName())).forEach(foreignKeys::add);
+		int[] parentPositions = new int[foreignKeys.size()];
+		KeyTracker[] parents = new KeyTracker[foreignKeys.size()];
+		for (int j = 0; j < foreignKeys.size(); j++) {
+			Key fk = foreignKeys.get(j);
+			parentPositions[j] = columnNames.indexOf(fk.getFkColumnName());
+			parents[j] = trackers.get(fk.getTableName()).get(fk.getColumnName());
+		}
+
+		int primaryKeyPosition = table.getPrimaryKeys() == null || table.getPrimaryKeys().size() != 1 ? -1
+				: columnNames.indexOf(table.getPrimaryKeys().iterator().next().getColumnName());
+		KeyTracker copied = new KeyTracker();
+
+		return row -> {
+			if (primaryKeyPosition >= 0 && !copied.markCopied(row[primaryKeyPosition])) {
+				return false;
+			}
+			for (int k = 0; k < own.length; k++) {
+				own[k].markSeen(row[ownPositions[k]]);
+			}
+			for (int k = 0; k < parents.length; k++) {
+				parents[k].enqueue(row[parentPositions[k]]);
+			}
+			return true;
+		};
+	}
+
+	/**
+	 * Keys of one referenced column: the ones already copied and the ones still to fetch. Also keeps the primary keys of
+	 * a table's copied rows.
+	 * Integral keys live in primitive sets, anything else (char ids, binary uuids) falls back to sets of SQL literals.
+	 */
+	private static class KeyTracker {
+
+		private final LongHashSet seen = new LongHashSet();
+		private final LongHashSet queued = new LongHashSet();
+		private final Set<String> seenLiterals = new HashSet<>();
+		private final Set<String> queuedLiterals = new LinkedHashSet<>();
+
+		void markSeen(Object value) {
+			if (value == null) {
+				return;
+			}
+			if (isIntegral(value)) {
+				seen.add(((Number) value).longValue());
+			} else {
+				seenLiterals.add(toLiteral(value));
+			}
+		}
+
+		/**
+		 * @return false if the value was seen before
+		 */
+		boolean markCopied(Object value) {
+			if (value == null) {
+				return true;
+			}
+			return isIntegral(value) ? seen.add(((Number) value).longValue()) : seenLiterals.add(toLiteral(value));
+		}
+
+		void enqueue(Object value) {
+			if (value == null) {
+				return;
+			}
+			if (isIntegral(value)) {
+				long key = ((Number) value).longValue();
+				if (!seen.contains(key)) {
+					queued.add(key);
+				}
+			} else {
+				String literal = toLiteral(value);
+				if (!seenLiterals.contains(literal)) {
+					queuedLiterals.add(literal);
+				}
+			}
+		}
+
+		boolean hasQueued() {
+			return !queued.isEmpty() || !queuedLiterals.isEmpty();
+		}
+
+		/**
+		 * @return the queued integral keys that are still not copied, which from now on count as copied
+		 */
+		long[] drainQueuedKeys() {
+			long[] candidates = queued.toArray();
+			queued.clear();
+			int count = 0;
+			for (long key : candidates) {
+				if (seen.add(key)) {
+					candidates[count++] = key;
+				}
+			}
+			return Arrays.copyOf(candidates, count);
+		}
+
+		List<String> drainQueuedLiterals() {
+			List<String> literals = new ArrayList<>();
+			queuedLiterals.stream().filter(seenLiterals::add).forEach(literals::add);
+			queuedLiterals.clear();
+			return literals;
+		}
+
+		private static boolean isIntegral(Object value) {
+			return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+					|| value instanceof BigInteger && ((BigInteger) value).bitLength() < 64;
+		}
+
+		private static String toLiteral(Object value) {
+			if (value instanceof byte[]) {
+				StringBuilder hex = new StringBuilder("X'");
+				for (byte b : (byte[]) value) {
+					hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+				}
+				return hex.append("'").toString();
+			}
+			return "'" + value.toString().replace("\\", "\\\\").replace("'", "''") + "'";
+		}
+	}
+
+}